@@ -25,9 +25,29 @@ package tclinterpreter;
 public abstract class AbstractBasicTclLexer {
 
     /**
-     * TCL script
+     * Character class flags
      */
-    private String script = null;
+    protected static final byte WHITESPACE = 1, DIGIT = 2, LETTER = 4, UNDERSCORE = 8, HEXLETTER = 16;
+
+    /**
+     * The classes of ASCII characters
+     */
+    private static final byte[] CHARCLASSES = new byte[128];
+
+    static {
+        for (char c = 0; c < CHARCLASSES.length; c++) {
+            CHARCLASSES[c] = (byte) ((Character.isWhitespace(c) ? WHITESPACE : 0)
+                    | (Character.isDigit(c) ? DIGIT : 0)
+                    | (Character.isLetter(c) ? LETTER : 0)
+                    | (c == '_' ? UNDERSCORE : 0)
+                    | ((c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F') ? HEXLETTER : 0));
+        }
+    }
+
+    /**
+     * The source of the script characters
+     */
+    private final TclLexerInput input;
     /**
      * Current position in script
      */
@@ -48,6 +68,15 @@ public abstract class AbstractBasicTclLexer {
      * A flag indicating if whitespace shall be ignored
      */
     private final boolean skipWhitespace;
+    /**
+     * The start position of the token being read or -1
+     */
+    private int tokenstart = -1;
+    /**
+     * The value of the token being read if it differs from the script slice
+     * because of substitutions or escaped ends of lines
+     */
+    private StringBuilder tokentext = null;
 
     /**
      * A general constructor of parsers
@@ -56,13 +85,23 @@ public abstract class AbstractBasicTclLexer {
      * @param skipWhitespace Should whitespace be skipped
      */
     public AbstractBasicTclLexer(String script, boolean skipWhitespace) {
-        this.script = script;
+        this(TclLexerInput.of(script), skipWhitespace);
+    }
+
+    /**
+     * A general constructor of parsers reading the script from an input
+     *
+     * @param input the source of the script characters
+     * @param skipWhitespace Should whitespace be skipped
+     */
+    public AbstractBasicTclLexer(TclLexerInput input, boolean skipWhitespace) {
+        this.input = input;
         //If the string has at least one symbol, read it as the current char
-        if (script.length() > 0) {
-            currentchar = script.charAt(pos);
+        if (input.has(0)) {
+            currentchar = input.charAt(pos);
             //If the string has at least two symbols, read the second one as the next char
-            if (script.length() > 1) {
-                nextchar = script.charAt(pos + 1);
+            if (input.has(1)) {
+                nextchar = input.charAt(pos + 1);
                 //Skipping any leading escaped end of line
                 if (currentchar == '\\' && (nextchar == '\n' || nextchar == '\r')) {
                     advancePosition();
@@ -73,20 +112,118 @@ public abstract class AbstractBasicTclLexer {
         this.skipWhitespace = skipWhitespace;
     }
 
+    /**
+     * Returning the class flags of a character. Non-ASCII characters are
+     * classified by the Character methods.
+     *
+     * @param c
+     * @return
+     */
+    protected static int charClass(char c) {
+        if (c < 128) {
+            return CHARCLASSES[c];
+        }
+        return (Character.isWhitespace(c) ? WHITESPACE : 0)
+                | (Character.isDigit(c) ? DIGIT : 0)
+                | (Character.isLetter(c) ? LETTER : 0);
+    }
+
+    /**
+     * Is the character a whitespace?
+     *
+     * @param c
+     * @return
+     */
+    protected static boolean isWhitespace(char c) {
+        return (charClass(c) & WHITESPACE) != 0;
+    }
+
+    /**
+     * Is the character a digit?
+     *
+     * @param c
+     * @return
+     */
+    protected static boolean isDigit(char c) {
+        return (charClass(c) & DIGIT) != 0;
+    }
+
+    /**
+     * Is the character a letter?
+     *
+     * @param c
+     * @return
+     */
+    protected static boolean isLetter(char c) {
+        return (charClass(c) & LETTER) != 0;
+    }
+
+    /**
+     * Can the character begin a name (a letter or an underscore)?
+     *
+     * @param c
+     * @return
+     */
+    protected static boolean isNameStart(char c) {
+        return (charClass(c) & (LETTER | UNDERSCORE)) != 0;
+    }
+
+    /**
+     * Can the character be a part of a name (a digit, a letter or an
+     * underscore)?
+     *
+     * @param c
+     * @return
+     */
+    protected static boolean isNameChar(char c) {
+        return (charClass(c) & (DIGIT | LETTER | UNDERSCORE)) != 0;
+    }
+
+    /**
+     * Is the character a hexadecimal digit?
+     *
+     * @param c
+     * @return
+     */
+    protected static boolean isHexDigit(char c) {
+        return (charClass(c) & (DIGIT | HEXLETTER)) != 0;
+    }
+
+    /**
+     * Returning the closing character for an opening quote or bracket
+     *
+     * @param c
+     * @return the closing character or zero
+     */
+    protected static char mirror(char c) {
+        switch (c) {
+            case '"':
+                return '"';
+            case '[':
+                return ']';
+            case '{':
+                return '}';
+            default:
+                return 0;
+        }
+    }
+
     /**
      * Advancing position by one symbol, zero if no next symbol
      */
     protected final void advancePosition() {
-        if (++pos < script.length()) {
+        if (input.has(++pos)) {
             previouschar = currentchar;
             currentchar = nextchar;
-            if (pos < script.length() - 1) {
-                nextchar = script.charAt(pos + 1);
+            if (input.has(pos + 1)) {
+                nextchar = input.charAt(pos + 1);
             } else {
                 nextchar = 0;
             }
             if (currentchar == '\\' && (nextchar == '\n' || nextchar == '\r')) {
                 char pchar = previouschar;
+                //The token being read is no longer a slice of the script
+                copyToken();
                 advancePosition();
                 skipEOL();
                 //Preserving the previous char
@@ -94,6 +231,68 @@ public abstract class AbstractBasicTclLexer {
             }
         } else {
             currentchar = 0;
+            pos = Math.min(pos, input.length());
+        }
+    }
+
+    /**
+     * Starting a token at the current position. Until the token is finished,
+     * its characters are taken directly from the script and copied only if
+     * substitutions are made.
+     */
+    protected final void beginToken() {
+        tokenstart = pos;
+        tokentext = null;
+        input.mark(pos);
+    }
+
+    /**
+     * Adding the current character to the token being read and advancing
+     * position
+     */
+    protected final void consumeChar() {
+        if (tokentext != null) {
+            tokentext.append(currentchar);
+        }
+        advancePosition();
+    }
+
+    /**
+     * Adding a backslash substitution to the token being read. The current
+     * character must be the backslash.
+     */
+    protected final void consumeSymbol() {
+        copyToken();
+        String symbol = replaceSymbol();
+        tokentext.append(symbol);
+    }
+
+    /**
+     * Finishing the token being read
+     *
+     * @param type the type of the token
+     * @return
+     */
+    protected final TclToken endToken(TclTokenType type) {
+        TclToken token;
+        if (tokentext == null) {
+            token = input.slice(type, tokenstart, pos);
+        } else {
+            token = new TclToken(type).setValue(tokentext.toString());
+        }
+        tokenstart = -1;
+        tokentext = null;
+        input.mark(-1);
+        return token;
+    }
+
+    /**
+     * Copying the characters of the token being read up to the current
+     * position
+     */
+    private void copyToken() {
+        if (tokenstart >= 0 && tokentext == null) {
+            tokentext = new StringBuilder(pos - tokenstart + 16).append(input.subSequence(tokenstart, pos));
         }
     }
 
@@ -123,12 +322,12 @@ public abstract class AbstractBasicTclLexer {
     public abstract TclToken getToken();
 
     /**
-     * Returning the Tcl script
+     * Returning the Tcl script or null if the script is streamed
      *
      * @return
      */
     public String getScript() {
-        return script;
+        return input.getScript();
     }
 
     /**
@@ -192,7 +391,7 @@ public abstract class AbstractBasicTclLexer {
      */
     protected String readOctalNumber() {
         StringBuilder oNumber = new StringBuilder("");
-        while (Character.isDigit(peek()) && (peek() != '8' && peek() != '9')) {
+        while (isDigit(peek()) && (peek() != '8' && peek() != '9')) {
             advancePosition();
             oNumber.append(currentchar);
         }
@@ -210,7 +409,7 @@ public abstract class AbstractBasicTclLexer {
      */
     protected String readHexNumber() {
         StringBuilder hNumber = new StringBuilder("");
-        while (Character.isDigit(peek()) || (Character.toLowerCase(peek()) >= 'a' && Character.toLowerCase(peek()) <= 'f')) {
+        while (isHexDigit(peek())) {
             advancePosition();
             hNumber.append(currentchar);
         }
@@ -228,7 +427,7 @@ public abstract class AbstractBasicTclLexer {
      */
     protected String readUnicode() {
         StringBuilder hNumber = new StringBuilder("");
-        while ((Character.isDigit(peek()) || (Character.toLowerCase(peek()) >= 'a' && Character.toLowerCase(peek()) <= 'f')) && hNumber.length() < 4) {
+        while (isHexDigit(peek()) && hNumber.length() < 4) {
             advancePosition();
             hNumber.append(currentchar);
         }
@@ -239,7 +438,7 @@ public abstract class AbstractBasicTclLexer {
      * Skipping end of line and any whitespace after it
      */
     private void skipEOL() {
-        while (Character.isWhitespace(currentchar) && currentchar != 0) {
+        while (isWhitespace(currentchar) && currentchar != 0) {
             advancePosition();
         }
     }
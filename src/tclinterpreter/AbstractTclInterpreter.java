@@ -16,9 +16,15 @@
  */
 package tclinterpreter;
 
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  *
@@ -28,14 +34,14 @@ import java.io.UnsupportedEncodingException;
 public abstract class AbstractTclInterpreter {
 
     /**
-     * A print stream for interpreter output and errors
+     * A buffered channel for interpreter output and errors
      */
-    protected PrintStream out;
+    protected TclOutputChannel out;
 
     /**
-     * A string for the script output
+     * The listener of trace events or null if tracing is disabled
      */
-    protected StringBuilder output = new StringBuilder("");
+    protected TclTraceListener tracer = null;
 
     /**
      * Current parser
@@ -65,17 +71,7 @@ public abstract class AbstractTclInterpreter {
      * @param encoding an encoding to be used for output encoding
      */
     protected AbstractTclInterpreter(AbstractTclParser parser, TclInterpreterContext context, boolean newcontext, OutputStream out, String encoding) {
-        this.parser = parser;
-        if (newcontext) {
-            this.context = new TclInterpreterContext(context);
-        } else {
-            this.context = context;
-        }
-        try {
-            this.out = new PrintStream(out, true, encoding);
-        } catch (UnsupportedEncodingException ex) {
-            this.out = new PrintStream(out, true);
-        }
+        this(parser, context, newcontext, new TclOutputChannel(out, charsetOf(encoding)));
     }
 
     /**
@@ -89,6 +85,21 @@ public abstract class AbstractTclInterpreter {
      * @param out an output stream
      */
     protected AbstractTclInterpreter(AbstractTclParser parser, TclInterpreterContext context, boolean newcontext, PrintStream out) {
+        this(parser, context, newcontext, new TclOutputChannel(out, Charset.defaultCharset()));
+    }
+
+    /**
+     * A full constructor with output channel, which may be shared with other
+     * interpreters
+     *
+     * @param parser a Tcl parser to use
+     * @param context the upper level context pointer or the current context
+     * pointer
+     * @param newcontext Should a new context should be created of a given
+     * context used
+     * @param out an output channel
+     */
+    protected AbstractTclInterpreter(AbstractTclParser parser, TclInterpreterContext context, boolean newcontext, TclOutputChannel out) {
         this.parser = parser;
         if (newcontext) {
             this.context = new TclInterpreterContext(context);
@@ -111,6 +122,41 @@ public abstract class AbstractTclInterpreter {
         this(parser, context, newcontext, System.out);
     }
 
+    /**
+     * Returning the charset with a given name or the default charset if it is
+     * not supported
+     *
+     * @param encoding
+     * @return
+     */
+    private static Charset charsetOf(String encoding) {
+        try {
+            return Charset.forName(encoding);
+        } catch (IllegalArgumentException ex) {
+            return Charset.defaultCharset();
+        }
+    }
+
+    /**
+     * Returning the output channel
+     *
+     * @return
+     */
+    public TclOutputChannel getOutputChannel() {
+        return out;
+    }
+
+    /**
+     * Writing the buffered output to the output stream
+     */
+    protected void flushOutput() {
+        try {
+            out.flush();
+        } catch (IOException ex) {
+            Logger.getLogger(AbstractTclInterpreter.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
     /**
      * Method, which sets up script
      *
@@ -139,12 +185,82 @@ public abstract class AbstractTclInterpreter {
     public abstract String run() throws AbstractTclParser.TclParserError, TclExecutionException;
 
     /**
-     * Getting the script output string
+     * Getting the trace if it is collected in memory by a TclTraceWriter
      *
      * @return
      */
     public String getOutput() {
-        return output.toString();
+        return tracer instanceof TclTraceWriter ? tracer.toString() : "";
+    }
+
+    /**
+     * Returning the listener of trace events
+     *
+     * @return the listener or null if tracing is disabled
+     */
+    public TclTraceListener getTraceListener() {
+        return tracer;
+    }
+
+    /**
+     * Setting the listener of trace events
+     *
+     * @param tracer the listener or null to disable tracing
+     */
+    public void setTraceListener(TclTraceListener tracer) {
+        this.tracer = tracer;
+    }
+
+    /**
+     * Sending a trace event if tracing is enabled
+     *
+     * @param kind
+     * @param name
+     * @param value
+     */
+    protected void trace(TclTraceEvent.Kind kind, String name, String value) {
+        if (tracer != null) {
+            tracer.trace(new TclTraceEvent(kind, name, null, value));
+        }
+    }
+
+    /**
+     * Sending a trace event for an array element if tracing is enabled
+     *
+     * @param kind
+     * @param name
+     * @param index
+     * @param value
+     */
+    protected void trace(TclTraceEvent.Kind kind, String name, String index, String value) {
+        if (tracer != null) {
+            tracer.trace(new TclTraceEvent(kind, name, index, value));
+        }
+    }
+
+    /**
+     * Returning the most recent trace events if they are kept by a
+     * TclFlightRecorder
+     *
+     * @return the events from the oldest to the most recent
+     */
+    public List<TclTraceEvent> getRecentEvents() {
+        return tracer instanceof TclFlightRecorder
+                ? ((TclFlightRecorder) tracer).getEvents() : Collections.emptyList();
+    }
+
+    /**
+     * Attaching the most recent trace events to an execution error unless it
+     * already has them
+     *
+     * @param ex
+     * @return the same error
+     */
+    protected TclExecutionException recordEvents(TclExecutionException ex) {
+        if (ex.events == null && tracer instanceof TclFlightRecorder) {
+            ex.events = ((TclFlightRecorder) tracer).getEvents();
+        }
+        return ex;
     }
 
     /**
@@ -155,16 +271,52 @@ public abstract class AbstractTclInterpreter {
     }
 
     /**
-     * A general class for execution errors thrown by interpreters
+     * A general class for execution errors thrown by interpreters. Errors do
+     * not capture Java stack traces unless the system property
+     * 'tclinterpreter.stacktraces' is true or they are enabled by
+     * setStackTraces. Instead the nodes of the commands the error passes
+     * through are collected, and the Tcl error information is created from
+     * them only when it is requested.
      *
      */
     public static class TclExecutionException extends Exception {
 
+        /**
+         * The system property enabling Java stack traces of errors
+         */
+        public static final String STACKTRACE_PROPERTY = "tclinterpreter.stacktraces";
+
+        /**
+         * Are Java stack traces captured?
+         */
+        private static volatile boolean stacktraces = Boolean.getBoolean(STACKTRACE_PROPERTY);
+
         /**
          * The node being evaluated
          */
         protected TclNode currentnode;
 
+        /**
+         * The trace events recorded before the error or null
+         */
+        protected List<TclTraceEvent> events = null;
+
+        /**
+         * The commands the error has passed through, the innermost first, or
+         * null
+         */
+        protected List<TclNode> frames = null;
+
+        /**
+         * The initial error information replacing the message or null
+         */
+        protected String info = null;
+
+        /**
+         * The error code
+         */
+        protected String errorcode = "NONE";
+
         /**
          * A construtor
          *
@@ -172,13 +324,188 @@ public abstract class AbstractTclInterpreter {
          * @param currentnode the node being evaluated
          */
         public TclExecutionException(String msg, TclNode currentnode) {
-            super(msg);
+            this(msg, currentnode, stacktraces);
+        }
+
+        /**
+         * A constructor for errors with or without a stack trace
+         *
+         * @param msg
+         * @param currentnode the node being evaluated
+         * @param stacktrace should the stack trace be filled in
+         */
+        protected TclExecutionException(String msg, TclNode currentnode, boolean stacktrace) {
+            super(msg, null, stacktrace, stacktrace);
             this.currentnode = currentnode;
         }
 
+        /**
+         * Returning the completion code
+         *
+         * @return
+         */
+        public TclCompletionCode getCode() {
+            return TclCompletionCode.ERROR;
+        }
+
+        /**
+         * Are Java stack traces of errors captured?
+         *
+         * @return
+         */
+        public static boolean isStackTraces() {
+            return stacktraces;
+        }
+
+        /**
+         * Enabling or disabling Java stack traces of errors, for example for
+         * debugging
+         *
+         * @param enabled
+         */
+        public static void setStackTraces(boolean enabled) {
+            stacktraces = enabled;
+        }
+
+        /**
+         * Adding a command the error passes through
+         *
+         * @param command
+         * @return this error
+         */
+        protected TclExecutionException addFrame(TclNode command) {
+            if (frames == null) {
+                frames = new ArrayList<>();
+            }
+            frames.add(command);
+            return this;
+        }
+
+        /**
+         * Returning the Tcl error information: the message followed by the
+         * commands the error has passed through
+         *
+         * @return
+         */
+        public String getErrorInfo() {
+            StringBuilder str = new StringBuilder(info == null ? getMessage() : info);
+            if (frames != null) {
+                for (int k = 0; k < frames.size(); k++) {
+                    TclNode command = frames.get(k);
+                    str.append(k == 0 ? "\n    while executing\n\"" : "\n    invoked from within\n\"")
+                            .append(command.getValue());
+                    String args = TclInterpreter.digest(command);
+                    if (!args.isEmpty()) {
+                        str.append(' ').append(args);
+                    }
+                    str.append('"');
+                }
+            }
+            return str.toString();
+        }
+
+        /**
+         * Setting the initial error information replacing the message
+         *
+         * @param info
+         */
+        public void setErrorInfo(String info) {
+            this.info = info;
+        }
+
+        /**
+         * Returning the error code
+         *
+         * @return
+         */
+        public String getErrorCode() {
+            return errorcode;
+        }
+
+        /**
+         * Setting the error code
+         *
+         * @param errorcode
+         */
+        public void setErrorCode(String errorcode) {
+            this.errorcode = errorcode;
+        }
+
+        /**
+         * Returning the trace events recorded before the error by the
+         * flight recorder of the interpreter
+         *
+         * @return the events or an empty list
+         */
+        public List<TclTraceEvent> getEvents() {
+            return events == null ? Collections.emptyList() : events;
+        }
+
         @Override
         public String toString() {
             return super.getMessage() + " (at " + currentnode + " )";
         }
     }
+
+    /**
+     * A class for the completions of scripts by the commands 'return', 'break'
+     * and 'continue'. Completions have no stack trace, and the ones without a
+     * value are preallocated, so unwinding the stack with them is cheap.
+     */
+    public static class TclCompletion extends TclExecutionException {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The completion of the 'break' command
+         */
+        public static final TclCompletion BREAK = new TclCompletion(TclCompletionCode.BREAK, null);
+
+        /**
+         * The completion of the 'continue' command
+         */
+        public static final TclCompletion CONTINUE = new TclCompletion(TclCompletionCode.CONTINUE, null);
+
+        /**
+         * The completion code
+         */
+        protected final TclCompletionCode code;
+
+        /**
+         * The returned value or null
+         */
+        protected final TclList value;
+
+        /**
+         * A constructor
+         *
+         * @param code
+         * @param value the returned value or null
+         */
+        public TclCompletion(TclCompletionCode code, TclList value) {
+            super(code.toString(), null, false);
+            this.code = code;
+            this.value = value;
+        }
+
+        @Override
+        public TclCompletionCode getCode() {
+            return code;
+        }
+
+        @Override
+        protected TclExecutionException addFrame(TclNode command) {
+            //Completions may be shared, so they are not changed
+            return this;
+        }
+
+        /**
+         * Returning the returned value
+         *
+         * @return the value or null
+         */
+        public TclList getValue() {
+            return value;
+        }
+    }
 }
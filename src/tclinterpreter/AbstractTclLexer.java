@@ -34,13 +34,23 @@ public abstract class AbstractTclLexer extends AbstractBasicTclLexer {
         super(script, skipWhitespace);
     }
 
+    /**
+     * A general constructor of parsers reading the script from an input
+     *
+     * @param input the source of the script characters
+     * @param skipWhitespace Should whitespace be skipped
+     */
+    public AbstractTclLexer(TclLexerInput input, boolean skipWhitespace) {
+        super(input, skipWhitespace);
+    }
+
     @Override
     public TclToken getToken() {
         TclToken nexttoken;
         /*
          Skipping any leading whitespace (if allowed)
          */
-        if (Character.isWhitespace(getCurrentchar()) && isSkipWhitespace()) {
+        if (isWhitespace(getCurrentchar()) && isSkipWhitespace()) {
             skipWhitespace();
         }
         /*
@@ -44,6 +44,34 @@ public abstract class AbstractTclParser {
         this.lexer = lexer;
     }
 
+    /**
+     * Advancing to the next token and checking its type
+     *
+     * @param type
+     * @return true if the token is of the given type
+     */
+    protected boolean acceptToken(TclTokenType type) {
+        previoustoken = currenttoken;
+        currenttoken = lexer.getToken();
+        return currenttoken.type == type;
+    }
+
+    /**
+     * Advancing to the next token and checking its type
+     *
+     * @param types
+     * @return true if the token is of one of the given types
+     */
+    protected boolean acceptToken(TclTokenType... types) {
+        currenttoken = lexer.getToken();
+        for (TclTokenType type : types) {
+            if (currenttoken.type == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Advancing to the next token. Throwing and exception if a wrong token
      *
@@ -51,10 +79,8 @@ public abstract class AbstractTclParser {
      * @throws tclinterpreter.TclParser.TclParserError
      */
     protected void advanceToken(TclTokenType type) throws TclParser.TclParserError {
-        previoustoken = currenttoken;
-        currenttoken = lexer.getToken();
-        if (currenttoken.type != type) {
-            throw new TclParserError("Parser error", currenttoken.type, type);
+        if (!acceptToken(type)) {
+            throw unexpectedToken(type);
         }
     }
 
@@ -65,16 +91,22 @@ public abstract class AbstractTclParser {
      * @throws tclinterpreter.TclParser.TclParserError
      */
     protected void advanceToken(TclTokenType... types) throws TclParser.TclParserError {
-        currenttoken = lexer.getToken();
-        boolean flag = true;
-        for (TclTokenType type : types) {
-            flag = flag && currenttoken.type != type;
-        }
-        if (flag) {
-            throw new TclParserError("Parser error", currenttoken.type, types[0]);
+        if (!acceptToken(types)) {
+            throw unexpectedToken(types[0]);
         }
     }
 
+    /**
+     * Creating an error for the current token if a token of a different type
+     * is expected
+     *
+     * @param type the expected token type
+     * @return
+     */
+    protected TclParserError unexpectedToken(TclTokenType type) {
+        return new TclParserError("Parser error", currenttoken.type, type);
+    }
+
     /**
      * Parsing the script and creating the node tree consisting of commands 
      * and other node types
@@ -74,10 +74,28 @@ public class GenericTclCommand implements TclCommand<TclNode, TclList> {
         if (command == null) {
             return null;
         }
-        //If at least argNumber operand, process the 'while' cycle
+        return applyChecked(name, argNumber, node, command, TclCommand::apply);
+    }
+
+    /**
+     * Applying a command body if the command has at least argNumber
+     * arguments. Missing arguments found by the body are reported as well.
+     *
+     * @param <T> the class of the object the body is applied with
+     * @param name the command name
+     * @param argNumber the minimal number of arguments
+     * @param node
+     * @param target the object the body is applied with
+     * @param body
+     * @return
+     * @throws AbstractTclInterpreter.TclExecutionException
+     */
+    protected static <T> TclList applyChecked(String name, int argNumber, TclNode node, T target, Body<T> body)
+            throws AbstractTclInterpreter.TclExecutionException {
+        //If at least argNumber operand, apply the command
         if (node.getChildren().size() >= argNumber) {
             try {
-                return command.apply(node);
+                return body.apply(target, node);
             } catch (IndexOutOfBoundsException ex) {
                 throw new AbstractTclInterpreter.TclExecutionException("Insufficient number of operands in '"
                         + name + "' command!", node);
@@ -88,4 +106,22 @@ public class GenericTclCommand implements TclCommand<TclNode, TclList> {
                     + " command must have at least " + argNumber + " argument" + (argNumber > 1 ? "s" : "") + "!", node);
         }
     }
+
+    /**
+     * An interface for command bodies applied with an object
+     *
+     * @param <T> the class of the object
+     */
+    public interface Body<T> {
+
+        /**
+         * Applying the body
+         *
+         * @param target
+         * @param node
+         * @return
+         * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
+         */
+        public TclList apply(T target, TclNode node) throws AbstractTclInterpreter.TclExecutionException;
+    }
 }
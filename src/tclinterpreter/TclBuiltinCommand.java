@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2016 Ruslan Feshchenko
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tclinterpreter;
+
+/**
+ * A class for built-in Tcl commands. Built-in commands are stateless and
+ * shared by all interpreters, which are passed to them on each call.
+ *
+ * @author Ruslan Feshchenko
+ * @version 0.1
+ */
+public class TclBuiltinCommand {
+
+    /**
+     * Tcl command body
+     */
+    protected final Action action;
+
+    /**
+     * Minimal number of argument
+     */
+    protected final int argNumber;
+
+    /**
+     * Command name
+     */
+    protected final String name;
+
+    /**
+     * Constructor
+     *
+     * @param name
+     * @param argNumber
+     * @param action
+     */
+    public TclBuiltinCommand(String name, int argNumber, Action action) {
+        this.name = name;
+        this.argNumber = argNumber;
+        this.action = action;
+    }
+
+    /**
+     * Returning name
+     *
+     * @return
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Applying command and checking that the correct number of arguments is
+     * present
+     *
+     * @param interpreter the interpreter executing the command
+     * @param node
+     * @return
+     * @throws AbstractTclInterpreter.TclExecutionException
+     */
+    public TclList apply(TclInterpreter interpreter, TclNode node) throws AbstractTclInterpreter.TclExecutionException {
+        return GenericTclCommand.applyChecked(name, argNumber, node, interpreter, action);
+    }
+
+    /**
+     * An interface for the actions of built-in Tcl commands
+     */
+    public interface Action extends GenericTclCommand.Body<TclInterpreter> {
+
+        /**
+         * The action of the built-in Tcl command
+         *
+         * @param interpreter the interpreter executing the command
+         * @param node
+         * @return
+         * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
+         */
+        @Override
+        public TclList apply(TclInterpreter interpreter, TclNode node) throws AbstractTclInterpreter.TclExecutionException;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2016 Ruslan Feshchenko
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tclinterpreter;
+
+/**
+ * A class for compiled Tcl scripts and expressions. The instructions are
+ * immutable and can be shared by interpreters, only the execution counters
+ * and the translated code are updated.
+ *
+ * @author Ruslan Feshchenko
+ * @version 0.1
+ */
+public class TclByteCode {
+
+    /**
+     * The instructions and their operands
+     */
+    protected final int[] code;
+
+    /**
+     * The constant pool
+     */
+    protected final Object[] constants;
+
+    /**
+     * The maximal depth of the operand stack
+     */
+    protected final int maxStack;
+
+    /**
+     * Is it a compiled expression, which leaves its value on the stack?
+     */
+    protected final boolean expression;
+
+    /**
+     * The completion handlers: body start, body end, break target and
+     * continue target for each inline loop, the innermost loops first
+     */
+    protected final int[] handlers;
+
+    /**
+     * The number of executions and loop iterations since the last
+     * translation
+     */
+    protected int invocations = 0;
+
+    /**
+     * The number of times the translated code has been abandoned
+     */
+    protected int deoptimizations = 0;
+
+    /**
+     * Should the code stay in the virtual machine?
+     */
+    protected boolean rejected = false;
+
+    /**
+     * The translated code or null
+     */
+    protected volatile TclJitCompiler.CompiledCode compiled = null;
+
+    /**
+     * Constructor
+     *
+     * @param code
+     * @param constants
+     * @param maxStack
+     * @param expression
+     */
+    public TclByteCode(int[] code, Object[] constants, int maxStack, boolean expression) {
+        this(code, constants, maxStack, expression, new int[0]);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param code
+     * @param constants
+     * @param maxStack
+     * @param expression
+     * @param handlers the completion handlers of inline loops
+     */
+    public TclByteCode(int[] code, Object[] constants, int maxStack, boolean expression, int[] handlers) {
+        this.code = code;
+        this.constants = constants;
+        this.maxStack = maxStack;
+        this.expression = expression;
+        this.handlers = handlers;
+    }
+
+    /**
+     * Finding the target of a completion thrown at a position
+     *
+     * @param pc the position of the instruction
+     * @param code the completion code
+     * @return the target position or -1 if there is no handler
+     */
+    protected int findHandler(int pc, TclCompletionCode code) {
+        return findHandler(handlers, pc, code);
+    }
+
+    /**
+     * Finding the target of a completion in a handler table
+     *
+     * @param handlers the start, end, break target and continue target of
+     * each handler
+     * @param position
+     * @param code the completion code
+     * @return the target or -1 if there is no handler
+     */
+    protected static int findHandler(int[] handlers, int position, TclCompletionCode code) {
+        if (code == TclCompletionCode.BREAK || code == TclCompletionCode.CONTINUE) {
+            for (int k = 0; k < handlers.length; k += 4) {
+                if (position >= handlers[k] && position < handlers[k + 1]) {
+                    return handlers[k + (code == TclCompletionCode.BREAK ? 2 : 3)];
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returning the length of the instruction array
+     *
+     * @return
+     */
+    public int getLength() {
+        return code.length;
+    }
+
+    /**
+     * Is it a compiled expression?
+     *
+     * @return
+     */
+    public boolean isExpression() {
+        return expression;
+    }
+
+    /**
+     * Returning the number of executions and loop iterations since the last
+     * translation
+     *
+     * @return
+     */
+    public int getInvocations() {
+        return invocations;
+    }
+
+    /**
+     * Returning the number of times the translated code has been abandoned
+     *
+     * @return
+     */
+    public int getDeoptimizations() {
+        return deoptimizations;
+    }
+
+    /**
+     * Has the code been translated?
+     *
+     * @return
+     */
+    public boolean isPromoted() {
+        return compiled != null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder("");
+        TclOpCode op;
+        for (int pc = 0; pc < code.length; pc += op.operands + 1) {
+            op = TclOpCode.values()[code[pc]];
+            str.append(pc).append(": ").append(op);
+            for (int i = 1; i <= op.operands; i++) {
+                str.append(" ").append(code[pc + i]);
+            }
+            str.append("\n");
+        }
+        return str.toString();
+    }
+}
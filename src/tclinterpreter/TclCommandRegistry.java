@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2016 Ruslan Feshchenko
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tclinterpreter;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/**
+ * A map of Tcl commands defined for an interpreter. The commands resolved by
+ * command sites are kept in a table indexed by the numbers of command names,
+ * which is cleared whenever the map is modified. The views of the map are
+ * read-only, so all modifications go through the map methods.
+ *
+ * @author Ruslan Feshchenko
+ * @version 0.1
+ */
+public class TclCommandRegistry extends AbstractMap<String, TclCommand<TclNode, TclList>> {
+
+    /**
+     * The numbers of command names shared by all registries
+     */
+    private static final Map<String, Integer> NAMES = new ConcurrentHashMap<>();
+
+    /**
+     * The number of numbered command names
+     */
+    private static final AtomicInteger COUNT = new AtomicInteger();
+
+    /**
+     * The resolution of a name, which is not defined in the registry
+     */
+    private static final TclCommand<TclNode, TclList> UNDEFINED = node -> null;
+
+    /**
+     * The commands
+     */
+    private final Map<String, TclCommand<TclNode, TclList>> commands = new HashMap<>();
+
+    /**
+     * The resolved commands by the numbers of their names or null if a name
+     * has not been resolved
+     */
+    private final List<TclCommand<TclNode, TclList>> resolved = new ArrayList<>();
+
+    /**
+     * Returning the number of a command name, which indexes the resolutions
+     * of the name in all registries
+     *
+     * @param name
+     * @return
+     */
+    protected static int number(String name) {
+        return NAMES.computeIfAbsent(name, key -> COUNT.getAndIncrement());
+    }
+
+    /**
+     * Returning the command defined for a name, reusing the last resolution
+     * of the name until the registry is modified
+     *
+     * @param number the number of the name
+     * @param name
+     * @return the command or null if it is not defined
+     */
+    protected TclCommand<TclNode, TclList> resolve(int number, String name) {
+        if (commands.isEmpty()) {
+            return null;
+        }
+        TclCommand<TclNode, TclList> command = number < resolved.size() ? resolved.get(number) : null;
+        if (command == null) {
+            command = commands.get(name);
+            while (resolved.size() <= number) {
+                resolved.add(null);
+            }
+            resolved.set(number, command == null ? UNDEFINED : command);
+            return command;
+        }
+        return command == UNDEFINED ? null : command;
+    }
+
+    /**
+     * Discarding the resolutions after a modification
+     */
+    private void modified() {
+        resolved.clear();
+    }
+
+    @Override
+    public TclCommand<TclNode, TclList> get(Object key) {
+        return commands.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return commands.containsKey(key);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return commands.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return commands.size();
+    }
+
+    @Override
+    public TclCommand<TclNode, TclList> put(String key, TclCommand<TclNode, TclList> value) {
+        modified();
+        return commands.put(key, value);
+    }
+
+    @Override
+    public TclCommand<TclNode, TclList> remove(Object key) {
+        modified();
+        return commands.remove(key);
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super String, ? super TclCommand<TclNode, TclList>, ? extends TclCommand<TclNode, TclList>> function) {
+        modified();
+        commands.replaceAll(function);
+    }
+
+    @Override
+    public void clear() {
+        modified();
+        commands.clear();
+    }
+
+    @Override
+    public Set<Map.Entry<String, TclCommand<TclNode, TclList>>> entrySet() {
+        //Other modifications go through put and remove
+        return Collections.unmodifiableSet(commands.entrySet());
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2016 Ruslan Feshchenko
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tclinterpreter;
+
+/**
+ * A command invocation in compiled code. Compiled code is shared by
+ * interpreters, so the commands defined for an interpreter are resolved by
+ * its registry, which keeps the resolutions by the number of the command
+ * name. Built-in commands are resolved once.
+ *
+ * @author Ruslan Feshchenko
+ * @version 0.1
+ */
+public class TclCommandSite {
+
+    /**
+     * The command node
+     */
+    protected final TclNode command;
+
+    /**
+     * The built-in command or null. Built-in commands never change.
+     */
+    protected final TclBuiltinCommand builtin;
+
+    /**
+     * The number of the command name in command registries
+     */
+    protected final int number;
+
+    /**
+     * Constructor
+     *
+     * @param command the command node
+     */
+    public TclCommandSite(TclNode command) {
+        this.command = command;
+        this.builtin = TclInterpreter.BUILTINS.get(command.getValue());
+        this.number = TclCommandRegistry.number(command.getValue());
+    }
+
+    /**
+     * Returning the command node
+     *
+     * @return
+     */
+    public TclNode getCommand() {
+        return command;
+    }
+
+    /**
+     * Returning the command defined for the interpreter or null
+     *
+     * @param registry the commands defined for the interpreter
+     * @return
+     */
+    protected TclCommand<TclNode, TclList> resolve(TclCommandRegistry registry) {
+        return registry.resolve(number, command.getValue());
+    }
+
+    @Override
+    public String toString() {
+        return command.toString();
+    }
+}
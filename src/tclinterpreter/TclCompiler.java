@@ -0,0 +1,730 @@
+/*
+ * Copyright (C) 2016 Ruslan Feshchenko
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tclinterpreter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compiler of parsed Tcl programs and expressions into TclByteCode. The
+ * commands 'set', 'expr', 'if', 'for' and 'while' with literal arguments are
+ * compiled inline, their bodies becoming a part of the enclosing code, and so
+ * are 'break' and 'continue' in inline loops. All other commands are invoked
+ * by their nodes.
+ *
+ * @author Ruslan Feshchenko
+ * @version 0.1
+ */
+public class TclCompiler {
+
+    /**
+     * The instruction array
+     */
+    protected int[] code = new int[64];
+
+    /**
+     * The number of used elements of the instruction array
+     */
+    protected int length = 0;
+
+    /**
+     * The constant pool
+     */
+    protected final List<Object> constants = new ArrayList<>();
+
+    /**
+     * The indexes of string constants in the pool
+     */
+    protected final Map<String, Integer> stringconstants = new HashMap<>();
+
+    /**
+     * The current and the maximal depth of the operand stack
+     */
+    protected int depth = 0, maxDepth = 0;
+
+    /**
+     * The inline loops being compiled, the innermost last
+     */
+    protected final List<Loop> loops = new ArrayList<>();
+
+    /**
+     * The completion handlers: body start, body end, break target and
+     * continue target for each inline loop, the innermost loops first
+     */
+    protected int[] handlers = new int[0];
+
+    /**
+     * Compiling a Tcl program
+     *
+     * @param program the program node
+     * @return
+     */
+    public static TclByteCode compileProgram(TclNode program) {
+        TclCompiler compiler = new TclCompiler();
+        compiler.compileCommands(program);
+        return compiler.build(false);
+    }
+
+    /**
+     * Compiling a parsed Tcl expression
+     *
+     * @param expression the root node of the expression
+     * @return
+     */
+    public static TclByteCode compileExpression(TclNode expression) {
+        TclCompiler compiler = new TclCompiler();
+        compiler.compileExpressionNode(expression);
+        return compiler.build(true);
+    }
+
+    /**
+     * Creating the compiled code
+     *
+     * @param expression is it an expression
+     * @return
+     */
+    protected TclByteCode build(boolean expression) {
+        return new TclByteCode(Arrays.copyOf(code, length), constants.toArray(), Math.max(maxDepth, 1), expression, handlers);
+    }
+
+    /**
+     * Compiling all commands of a program
+     *
+     * @param program
+     */
+    protected void compileCommands(TclNode program) {
+        for (TclNode command : program.getChildren()) {
+            compileCommand(command);
+        }
+    }
+
+    /**
+     * Compiling a command either inline or as an invocation
+     *
+     * @param command
+     */
+    protected void compileCommand(TclNode command) {
+        int start = length;
+        int startDepth = depth;
+        boolean inlined;
+        switch (command.getValue()) {
+            case "set":
+                inlined = compileSet(command);
+                break;
+            case "expr":
+                inlined = compileExpr(command);
+                break;
+            case "if":
+                inlined = compileIf(command);
+                break;
+            case "for":
+                inlined = compileFor(command);
+                break;
+            case "while":
+                inlined = compileWhile(command);
+                break;
+            case "break":
+            case "continue":
+                inlined = compileLoopExit(command);
+                break;
+            default:
+                inlined = false;
+        }
+        if (!inlined) {
+            //Discarding any partially compiled code
+            length = start;
+            depth = startDepth;
+            emit(TclOpCode.INVOKE, constant(new TclCommandSite(command)));
+        }
+    }
+
+    /**
+     * Compiling the 'set' command with two arguments
+     *
+     * @param command
+     * @return false if the command can not be compiled inline
+     */
+    protected boolean compileSet(TclNode command) {
+        List<TclNode> args = command.getChildren();
+        String name;
+        if (args.size() != 2 || (name = literal(args.get(0))) == null || name.isEmpty()) {
+            return false;
+        }
+        Variable var = new Variable(name, command);
+        int guard = beginInline("set");
+        compileWord(args.get(1));
+        emit(var.index == null ? TclOpCode.STORE_VAR : TclOpCode.STORE_ARRAY, constant(var));
+        endInline(guard, command);
+        return true;
+    }
+
+    /**
+     * Compiling the 'expr' command with a literal argument
+     *
+     * @param command
+     * @return false if the command can not be compiled inline
+     */
+    protected boolean compileExpr(TclNode command) {
+        List<TclNode> args = command.getChildren();
+        TclNode expression;
+        if (args.size() != 1 || (expression = parseExpression(args.get(0))) == null) {
+            return false;
+        }
+        int guard = beginInline("expr");
+        compileExpressionNode(expression);
+        emit(TclOpCode.EXPR_RESULT);
+        endInline(guard, command);
+        return true;
+    }
+
+    /**
+     * Compiling the 'if' command with literal arguments
+     *
+     * @param command
+     * @return false if the command can not be compiled inline
+     */
+    protected boolean compileIf(TclNode command) {
+        List<TclNode> args = command.getChildren();
+        List<TclNode> conditions = new ArrayList<>();
+        List<TclNode> bodies = new ArrayList<>();
+        TclNode elsebody = null;
+        String word;
+        int i = 0;
+        if (args.size() < 2) {
+            return false;
+        }
+        /*
+         Collecting conditions and bodies the same way the 'if' command does
+         */
+        TclNode condition = parseExpression(args.get(i++));
+        while (condition != null) {
+            if (i >= args.size() || (word = literal(args.get(i++))) == null) {
+                return false;
+            }
+            if (word.toLowerCase().equals("then")) {
+                if (i >= args.size() || (word = literal(args.get(i++))) == null) {
+                    return false;
+                }
+            }
+            TclNode body = parseScript(word);
+            if (body == null) {
+                return false;
+            }
+            conditions.add(condition);
+            bodies.add(body);
+            condition = null;
+            if (i < args.size()) {
+                if ((word = literal(args.get(i++))) == null) {
+                    return false;
+                }
+                switch (word.toLowerCase()) {
+                    case "elseif":
+                        if (i >= args.size() || (condition = parseExpression(args.get(i++))) == null) {
+                            return false;
+                        }
+                        break;
+                    case "else":
+                        if (i >= args.size() || (word = literal(args.get(i++))) == null
+                                || (elsebody = parseScript(word)) == null) {
+                            return false;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        if (bodies.isEmpty()) {
+            return false;
+        }
+        /*
+         Compiling the chain of conditions
+         */
+        int guard = beginInline("if");
+        int[] ends = new int[bodies.size()];
+        for (int k = 0; k < bodies.size(); k++) {
+            compileExpressionNode(conditions.get(k));
+            int next = emitJump(TclOpCode.JUMP_FALSE, constant(command));
+            compileCommands(bodies.get(k));
+            ends[k] = emitJump(TclOpCode.JUMP);
+            patch(next, length);
+        }
+        if (elsebody != null) {
+            compileCommands(elsebody);
+        }
+        for (int end : ends) {
+            patch(end, length);
+        }
+        endInline(guard, command);
+        return true;
+    }
+
+    /**
+     * Compiling the 'for' command with literal arguments
+     *
+     * @param command
+     * @return false if the command can not be compiled inline
+     */
+    protected boolean compileFor(TclNode command) {
+        List<TclNode> args = command.getChildren();
+        TclNode start, condition, next, body;
+        if (args.size() != 4
+                || (start = parseScript(literal(args.get(0)))) == null
+                || (condition = parseExpression(args.get(1))) == null
+                || (next = parseScript(literal(args.get(2)))) == null
+                || (body = parseScript(literal(args.get(3)))) == null) {
+            return false;
+        }
+        int guard = beginInline("for");
+        compileCommands(start);
+        int loop = length;
+        compileExpressionNode(condition);
+        int exit = emitJump(TclOpCode.JUMP_FALSE, constant(command));
+        int bodyStart = length;
+        loops.add(new Loop());
+        compileCommands(body);
+        int bodyEnd = length;
+        compileCommands(next);
+        emit(TclOpCode.JUMP, loop);
+        patch(exit, length);
+        endLoop(bodyStart, bodyEnd, length, bodyEnd);
+        endInline(guard, command);
+        return true;
+    }
+
+    /**
+     * Compiling the 'while' command with literal arguments
+     *
+     * @param command
+     * @return false if the command can not be compiled inline
+     */
+    protected boolean compileWhile(TclNode command) {
+        List<TclNode> args = command.getChildren();
+        TclNode condition, body;
+        if (args.size() != 2
+                || (condition = parseExpression(args.get(0))) == null
+                || (body = parseScript(literal(args.get(1)))) == null) {
+            return false;
+        }
+        int guard = beginInline("while");
+        int loop = length;
+        compileExpressionNode(condition);
+        int exit = emitJump(TclOpCode.JUMP_FALSE, constant(command));
+        int bodyStart = length;
+        loops.add(new Loop());
+        compileCommands(body);
+        int bodyEnd = length;
+        emit(TclOpCode.JUMP, loop);
+        patch(exit, length);
+        endLoop(bodyStart, bodyEnd, length, loop);
+        endInline(guard, command);
+        return true;
+    }
+
+    /**
+     * Compiling 'break' or 'continue' without arguments in an inline loop as a
+     * jump
+     *
+     * @param command
+     * @return false if the command can not be compiled inline
+     */
+    protected boolean compileLoopExit(TclNode command) {
+        if (!command.getChildren().isEmpty() || loops.isEmpty()) {
+            return false;
+        }
+        Loop loop = loops.get(loops.size() - 1);
+        int guard = beginInline(command.getValue());
+        int jump = emitJump(TclOpCode.JUMP);
+        if (command.getValue().equals("break")) {
+            loop.breaks.add(jump);
+        } else {
+            loop.continues.add(jump);
+        }
+        endInline(guard, command);
+        return true;
+    }
+
+    /**
+     * Patching the jumps of the innermost inline loop and adding its
+     * completion handler, which catches 'break' and 'continue' invoked in the
+     * body by other commands
+     *
+     * @param bodyStart
+     * @param bodyEnd
+     * @param breakTarget
+     * @param continueTarget
+     */
+    protected void endLoop(int bodyStart, int bodyEnd, int breakTarget, int continueTarget) {
+        Loop loop = loops.remove(loops.size() - 1);
+        for (int jump : loop.breaks) {
+            patch(jump, breakTarget);
+        }
+        for (int jump : loop.continues) {
+            patch(jump, continueTarget);
+        }
+        int k = handlers.length;
+        handlers = Arrays.copyOf(handlers, k + 4);
+        handlers[k] = bodyStart;
+        handlers[k + 1] = bodyEnd;
+        handlers[k + 2] = breakTarget;
+        handlers[k + 3] = continueTarget;
+    }
+
+    /**
+     * Emitting the guard, which falls back to the command invocation if the
+     * command is redefined
+     *
+     * @param name command name
+     * @return the position of the guard target to patch
+     */
+    protected int beginInline(String name) {
+        emit(TclOpCode.GUARD, constant(name), -1);
+        return length - 1;
+    }
+
+    /**
+     * Emitting the command invocation used if the guard fails
+     *
+     * @param guard the position of the guard target
+     * @param command the command node
+     */
+    protected void endInline(int guard, TclNode command) {
+        int end = emitJump(TclOpCode.JUMP);
+        patch(guard, length);
+        emit(TclOpCode.INVOKE, constant(new TclCommandSite(command)));
+        patch(end, length);
+    }
+
+    /**
+     * Compiling an operand, which leaves its string value on the stack
+     *
+     * @param operand
+     */
+    protected void compileWord(TclNode operand) {
+        int parts = 0;
+        StringBuilder text = null;
+        for (TclNode part : operand.getChildren()) {
+            switch (part.type) {
+                case WORD:
+                case STRING:
+                case SUBSTRING:
+                    //Merging adjacent literal parts
+                    if (text == null) {
+                        text = new StringBuilder(part.getValue());
+                    } else {
+                        text.append(part.getValue());
+                    }
+                    continue;
+                case NAME:
+                    parts += flushLiteral(text);
+                    text = null;
+                    Variable var = new Variable(part.getValue(), part);
+                    emit(var.index == null ? TclOpCode.LOAD_VAR : TclOpCode.LOAD_ARRAY, constant(var));
+                    parts++;
+                    break;
+                case PROGRAM:
+                    parts += flushLiteral(text);
+                    text = null;
+                    emit(TclOpCode.EVAL, constant(part.getValue()));
+                    parts++;
+                    break;
+                default:
+                    break;
+            }
+        }
+        parts += flushLiteral(text);
+        if (parts == 0) {
+            emit(TclOpCode.PUSH, constant(""));
+        } else if (parts > 1) {
+            emit(TclOpCode.CONCAT, parts);
+        }
+    }
+
+    /**
+     * Pushing accumulated literal text if any
+     *
+     * @param text
+     * @return the number of pushed values
+     */
+    private int flushLiteral(StringBuilder text) {
+        if (text == null) {
+            return 0;
+        }
+        emit(TclOpCode.PUSH, constant(text.toString()));
+        return 1;
+    }
+
+    /**
+     * Compiling an expression node, which leaves its value on the stack
+     *
+     * @param node
+     */
+    protected void compileExpressionNode(TclNode node) {
+        List<TclNode> children = node.getChildren();
+        switch (node.type) {
+            case NUMBER:
+                emit(TclOpCode.PUSH, constant(TclExpressionInterpreter.readNumber(node.getValue())));
+                break;
+            case STRING:
+                if (children.isEmpty()) {
+                    emit(TclOpCode.PUSH, constant(new TclExpressionInterpreter.OpResult(node.getValue())));
+                } else {
+                    compileWord(node);
+                    emit(TclOpCode.TO_STRING);
+                }
+                break;
+            case NAME:
+                Variable var = new Variable(node.getValue(), node);
+                emit(var.index == null ? TclOpCode.LOAD_VAR : TclOpCode.LOAD_ARRAY, constant(var));
+                emit(TclOpCode.TO_NUMBER, constant(node));
+                break;
+            case PROGRAM:
+                emit(TclOpCode.EVAL, constant(node.getValue()));
+                emit(TclOpCode.TO_NUMBER, constant(node));
+                break;
+            case FUNC:
+                compileExpressionNode(children.get(0));
+                emit(TclOpCode.FUNC, constant(node instanceof TclFunctionNode
+                        ? node : new TclFunctionNode(node.getValue())));
+                break;
+            case UNARYOP:
+                compileExpressionNode(children.get(0));
+                emit(TclOpCode.UNARY, constant(node));
+                break;
+            case BINARYOP:
+                compileExpressionNode(children.get(0));
+                if (TclExpressionInterpreter.isLogicalOperation(node)) {
+                    //The second argument is compiled separately to be evaluated only if needed
+                    emit(TclOpCode.LOGIC, constant(node), constant(compileExpression(children.get(1))));
+                } else {
+                    compileExpressionNode(children.get(1));
+                    emit(TclOpCode.BINARY, constant(node));
+                }
+                break;
+            case TERNARYOP:
+                compileExpressionNode(children.get(0));
+                emit(TclOpCode.TERNARY, constant(node), constant(compileExpression(children.get(1))),
+                        constant(compileExpression(children.get(2))));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown expression node type: " + node.type);
+        }
+    }
+
+    /**
+     * Returning the literal value of an operand or null if it has
+     * substitutions
+     *
+     * @param operand
+     * @return
+     */
+    protected static String literal(TclNode operand) {
+        StringBuilder str = new StringBuilder("");
+        for (TclNode part : operand.getChildren()) {
+            switch (part.type) {
+                case WORD:
+                case STRING:
+                case SUBSTRING:
+                    str.append(part.getValue());
+                    break;
+                default:
+                    return null;
+            }
+        }
+        return str.toString();
+    }
+
+    /**
+     * Parsing a literal script or returning null if it can not be parsed
+     *
+     * @param script
+     * @return
+     */
+    protected static TclNode parseScript(String script) {
+        if (script == null) {
+            return null;
+        }
+        try {
+            return TclInterpreter.SCRIPTCACHE.get(script, TclInterpreter::parseScript);
+        } catch (AbstractTclParser.TclParserError ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Parsing a literal operand as an expression or returning null if it can
+     * not be parsed
+     *
+     * @param operand
+     * @return
+     */
+    protected static TclNode parseExpression(TclNode operand) {
+        String expr = literal(operand);
+        if (expr == null) {
+            return null;
+        }
+        try {
+            return TclInterpreter.parseExpression(expr);
+        } catch (AbstractTclParser.TclParserError ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Adding a constant to the pool
+     *
+     * @param value
+     * @return the index of the constant
+     */
+    protected int constant(Object value) {
+        if (value instanceof String) {
+            Integer index = stringconstants.get((String) value);
+            if (index != null) {
+                return index;
+            }
+            stringconstants.put((String) value, constants.size());
+        }
+        constants.add(value);
+        return constants.size() - 1;
+    }
+
+    /**
+     * Emitting an instruction
+     *
+     * @param op
+     * @param operands
+     */
+    protected void emit(TclOpCode op, int... operands) {
+        if (length + operands.length + 1 > code.length) {
+            code = Arrays.copyOf(code, Math.max(code.length * 2, length + operands.length + 1));
+        }
+        code[length++] = op.ordinal();
+        for (int operand : operands) {
+            code[length++] = operand;
+        }
+        //Tracking the depth of the operand stack
+        switch (op) {
+            case PUSH:
+            case LOAD_VAR:
+            case LOAD_ARRAY:
+            case EVAL:
+                depth++;
+                break;
+            case CONCAT:
+                depth -= operands[0] - 1;
+                break;
+            case STORE_VAR:
+            case STORE_ARRAY:
+            case EXPR_RESULT:
+            case BINARY:
+            case JUMP_FALSE:
+                depth--;
+                break;
+            default:
+                break;
+        }
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    /**
+     * Emitting a jump instruction with the target to be patched
+     *
+     * @param op
+     * @param operands operands following the target
+     * @return the position of the target
+     */
+    protected int emitJump(TclOpCode op, int... operands) {
+        int[] all = new int[operands.length + 1];
+        all[0] = -1;
+        System.arraycopy(operands, 0, all, 1, operands.length);
+        emit(op, all);
+        return length - all.length;
+    }
+
+    /**
+     * Setting a jump target
+     *
+     * @param position the position of the target operand
+     * @param target
+     */
+    protected void patch(int position, int target) {
+        code[position] = target;
+    }
+
+    /**
+     * The jumps of 'break' and 'continue' in an inline loop to be patched
+     */
+    protected static class Loop {
+
+        /**
+         * The positions of the targets of 'break' jumps
+         */
+        protected final List<Integer> breaks = new ArrayList<>();
+
+        /**
+         * The positions of the targets of 'continue' jumps
+         */
+        protected final List<Integer> continues = new ArrayList<>();
+    }
+
+    /**
+     * A class for variable references with the array index separated at
+     * compile time
+     */
+    protected static class Variable {
+
+        /**
+         * The variable or array name
+         */
+        protected final String name;
+
+        /**
+         * The array index or null
+         */
+        protected final String index;
+
+        /**
+         * The node referring to the variable
+         */
+        protected final TclNode node;
+
+        /**
+         * Constructor
+         *
+         * @param name the name with a possible index in parentheses
+         * @param node
+         */
+        public Variable(String name, TclNode node) {
+            if (name.charAt(name.length() - 1) == ')' && name.indexOf('(') != -1) {
+                this.index = name.substring(name.lastIndexOf('(') + 1, name.length() - 1);
+                this.name = name.substring(0, name.lastIndexOf('('));
+            } else {
+                this.index = null;
+                this.name = name;
+            }
+            this.node = node;
+        }
+
+        @Override
+        public String toString() {
+            return index == null ? name : name + "(" + index + ")";
+        }
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2016 Ruslan Feshchenko
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tclinterpreter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An on-disk cache of parsed Tcl scripts. Program trees are stored in binary
+ * '.tclc' files named by the SHA-256 hash of the script source. Each file
+ * begins with a magic number, the format version and the hash, and files
+ * with a different version or hash are ignored and replaced.
+ *
+ * @author Ruslan Feshchenko
+ * @version 0.1
+ */
+public class TclDiskCache {
+
+    /**
+     * The extension of cache files
+     */
+    public static final String EXTENSION = ".tclc";
+
+    /**
+     * The magic number of cache files
+     */
+    public static final int MAGIC = 0x54434C43;
+
+    /**
+     * The version of the format, which must be changed whenever the format or
+     * the trees created by the parser change
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The node types by their ordinals
+     */
+    private static final TclNodeType[] NODETYPES = TclNodeType.values();
+
+    /**
+     * The cache directory
+     */
+    private final Path directory;
+
+    /**
+     * Constructor
+     *
+     * @param directory the cache directory, which is created if necessary
+     */
+    public TclDiskCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returning the cache directory
+     *
+     * @return
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returning the parsed script loaded from the cache or parsing the script
+     * and storing it in the cache
+     *
+     * @param script
+     * @return the program node
+     * @throws tclinterpreter.AbstractTclParser.TclParserError
+     */
+    public TclNode get(String script) throws AbstractTclParser.TclParserError {
+        return get(script.getBytes(StandardCharsets.UTF_8), script);
+    }
+
+    /**
+     * Returning the parsed script file loaded from the cache or parsing the
+     * file and storing it in the cache. The key is computed from the decoded
+     * script, so the same file read with different charsets is cached
+     * separately.
+     *
+     * @param file the script file
+     * @param charset the charset of the file
+     * @return the program node
+     * @throws IOException
+     * @throws tclinterpreter.AbstractTclParser.TclParserError
+     */
+    public TclNode get(Path file, Charset charset) throws IOException, AbstractTclParser.TclParserError {
+        return get(new String(Files.readAllBytes(file), charset));
+    }
+
+    /**
+     * Returning the parsed script loaded from the cache or parsing and storing
+     * it
+     *
+     * @param source the UTF-8 bytes of the script the key is computed from
+     * @param script the script
+     * @return
+     * @throws tclinterpreter.AbstractTclParser.TclParserError
+     */
+    private TclNode get(byte[] source, String script) throws AbstractTclParser.TclParserError {
+        byte[] hash = hash(source);
+        Path file = directory.resolve(toHex(hash) + EXTENSION);
+        TclNode program = null;
+        if (Files.isRegularFile(file)) {
+            try {
+                program = load(file, hash);
+            } catch (IOException ex) {
+                Logger.getLogger(TclDiskCache.class.getName()).log(Level.WARNING, "Corrupt cache file " + file, ex);
+            }
+        }
+        if (program == null) {
+            program = TclInterpreter.parseScript(script);
+            try {
+                store(file, hash, program);
+            } catch (IOException ex) {
+                Logger.getLogger(TclDiskCache.class.getName()).log(Level.WARNING, "Cannot write cache file " + file, ex);
+            }
+        }
+        return program;
+    }
+
+    /**
+     * Loading a program from a cache file
+     *
+     * @param file
+     * @param hash the expected hash
+     * @return the program node or null if the file is stale
+     * @throws IOException
+     */
+    protected static TclNode load(Path file, byte[] hash) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            byte[] stored = new byte[in.readUnsignedByte()];
+            in.readFully(stored);
+            if (!Arrays.equals(stored, hash)) {
+                return null;
+            }
+            return readNode(in);
+        }
+    }
+
+    /**
+     * Storing a program in a cache file. The file is written under a temporary
+     * name and then moved, so readers never see partial files.
+     *
+     * @param file
+     * @param hash
+     * @param program
+     * @throws IOException
+     */
+    protected void store(Path file, byte[] hash, TclNode program) throws IOException {
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, "tcl", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeByte(hash.length);
+                out.write(hash);
+                writeNode(out, program);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Writing a node and its children
+     *
+     * @param out
+     * @param node
+     * @throws IOException
+     */
+    protected static void writeNode(DataOutputStream out, TclNode node) throws IOException {
+        List<TclNode> children = node.getChildren();
+        out.writeByte(node.type.ordinal());
+        writeString(out, node.getValue());
+        out.writeInt(children.size());
+        for (TclNode child : children) {
+            writeNode(out, child);
+        }
+    }
+
+    /**
+     * Reading a node and its children
+     *
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    protected static TclNode readNode(DataInputStream in) throws IOException {
+        int type = in.readUnsignedByte();
+        if (type >= NODETYPES.length) {
+            throw new IOException("Unknown node type " + type);
+        }
+        String value = readString(in);
+        TclNode node = NODETYPES[type] == TclNodeType.FUNC
+                ? new TclFunctionNode(value) : new TclNode(NODETYPES[type]).setValue(value);
+        for (int n = in.readInt(); n > 0; n--) {
+            node.getChildren().add(readNode(in));
+        }
+        return node;
+    }
+
+    /**
+     * Writing a string, which may be null, as its UTF-8 length followed by
+     * its UTF-8 bytes. Null is written as the length -1.
+     *
+     * @param out
+     * @param str
+     * @throws IOException
+     */
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        if (str == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Reading a string written by writeString
+     *
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Computing the SHA-256 hash of the source
+     *
+     * @param source
+     * @return
+     */
+    private static byte[] hash(byte[] source) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(source);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Converting bytes to a hexadecimal string
+     *
+     * @param bytes
+     * @return
+     */
+    private static String toHex(byte[] bytes) {
+        StringBuilder str = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            str.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return str.toString();
+    }
+}
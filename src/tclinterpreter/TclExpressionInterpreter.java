@@ -16,9 +16,12 @@
  */
 package tclinterpreter;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.function.DoubleToLongFunction;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.LongToDoubleFunction;
 
 /**
  * A class for an interpreter of arithmetic expressions
@@ -31,19 +34,19 @@ public class TclExpressionInterpreter extends AbstractTclInterpreter {
     /**
      * A map for mathematical double to double functions
      */
-    protected Map<String, Function<Double, Double>> doubleToDoublefunctions;
+    protected static final Map<String, DoubleUnaryOperator> DOUBLETODOUBLEFUNCTIONS;
     /**
      * A map for mathematical double to long functions
      */
-    protected Map<String, Function<Double, Long>> doubleToLongfunctions;
+    protected static final Map<String, DoubleToLongFunction> DOUBLETOLONGFUNCTIONS;
     /**
      * A map for mathematical long to double functions
      */
-    protected Map<String, Function<Long, Double>> longToDoublefunctions;
+    protected static final Map<String, LongToDoubleFunction> LONGTODOUBLEFUNCTIONS;
 
     //Initializing maps
-    {
-        doubleToDoublefunctions = new HashMap<>();
+    static {
+        Map<String, DoubleUnaryOperator> doubleToDoublefunctions = new HashMap<>();
         doubleToDoublefunctions.put("sin", Math::sin);
         doubleToDoublefunctions.put("cos", Math::cos);
         doubleToDoublefunctions.put("sqrt", Math::sqrt);
@@ -60,25 +63,25 @@ public class TclExpressionInterpreter extends AbstractTclInterpreter {
         doubleToDoublefunctions.put("abs", Math::abs);
         doubleToDoublefunctions.put("log", Math::log);
         doubleToDoublefunctions.put("log10", Math::log10);
+        DOUBLETODOUBLEFUNCTIONS = Collections.unmodifiableMap(doubleToDoublefunctions);
 
-        doubleToLongfunctions = new HashMap<>();
+        Map<String, DoubleToLongFunction> doubleToLongfunctions = new HashMap<>();
         doubleToLongfunctions.put("round", Math::round);
-        doubleToLongfunctions.put("int", arg -> {
-            return arg.longValue();
-        });
-        doubleToLongfunctions.put("wide", arg -> {
-            return arg.longValue();
-        });
-        doubleToLongfunctions.put("entier", arg -> {
-            return arg.longValue();
-        });
-
-        longToDoublefunctions = new HashMap<>();
-        longToDoublefunctions.put("double", arg -> {
-            return arg.doubleValue();
-        });
+        doubleToLongfunctions.put("int", arg -> (long) arg);
+        doubleToLongfunctions.put("wide", arg -> (long) arg);
+        doubleToLongfunctions.put("entier", arg -> (long) arg);
+        DOUBLETOLONGFUNCTIONS = Collections.unmodifiableMap(doubleToLongfunctions);
+
+        Map<String, LongToDoubleFunction> longToDoublefunctions = new HashMap<>();
+        longToDoublefunctions.put("double", arg -> (double) arg);
+        LONGTODOUBLEFUNCTIONS = Collections.unmodifiableMap(longToDoublefunctions);
     }
 
+    /**
+     * The Tcl interpreter used for variable and command substitutions
+     */
+    protected TclInterpreter interpreter;
+
     /**
      * Constructor
      *
@@ -88,6 +91,18 @@ public class TclExpressionInterpreter extends AbstractTclInterpreter {
         super(parser, null, false);
     }
 
+    /**
+     * Constructor with a Tcl interpreter for variable and command
+     * substitutions, whose output channel is shared
+     *
+     * @param parser an expression parser
+     * @param interpreter the Tcl interpreter for substitutions
+     */
+    public TclExpressionInterpreter(TclExpressionParser parser, TclInterpreter interpreter) {
+        super(parser, null, false, interpreter.out);
+        this.interpreter = interpreter;
+    }
+
     /**
      * Calculating node value recursively
      *
@@ -96,7 +111,7 @@ public class TclExpressionInterpreter extends AbstractTclInterpreter {
      * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
      */
     protected OpResult calculateNode(TclNode node) throws TclExecutionException {
-        OpResult n1, n2, n3;
+        OpResult n1, n2;
         /*
          Switching based on the node type
          */
@@ -110,262 +125,382 @@ public class TclExpressionInterpreter extends AbstractTclInterpreter {
              If the node is a string, just get its value
              */
             case STRING:
+                if (!node.getChildren().isEmpty()) {
+                    return new OpResult(getInterpreter(node).readOpNode(node));
+                }
                 return new OpResult(node.getValue());
+            /*
+             If the node is a variable, read its value
+             */
+            case NAME:
+                String value = getInterpreter(node).readVariable(node.getValue());
+                if (value == null) {
+                    throw new TclExecutionException("The variable " + node.getValue() + " is not defined!", node);
+                }
+                return readNumber(value);
+            /*
+             If the node is a command, evaluate it and read its result
+             */
+            case PROGRAM:
+                return readNumber(TclInterpreter.listToString(getInterpreter(node).evaluateScript(node.getValue())));
             /*
                If the node is a functional operation, apply the function to the argument
              */
             case FUNC:
-                OpResult arg = calculateNode(node.getChildren().get(0));
-                //If the argument is integer then check function accepting an integer argument
-                if (arg.isLong()) {
-                    if (longToDoublefunctions.containsKey(node.getValue())) {
-                        return new OpResult(longToDoublefunctions.get(node.getValue()).apply(arg.getLong()));
-                    }
-                }
-                //If the argument is integer or double then check function accepting a double argument
-                if (arg.isDouble()) {
-                    if (doubleToLongfunctions.containsKey(node.getValue())) {
-                        return new OpResult(doubleToLongfunctions.get(node.getValue()).apply(arg.getDouble()));
-                    } else if (doubleToDoublefunctions.containsKey(node.getValue())) {
-                        return new OpResult(doubleToDoublefunctions.get(node.getValue()).apply(arg.getDouble()));
-                    }
-                }
-                throw new TclExecutionException("Unknown mathematical function or not numerical argument!", node);
+                //Function nodes created by the parser are already bound to their implementations
+                TclFunctionNode func = node instanceof TclFunctionNode
+                        ? (TclFunctionNode) node : new TclFunctionNode(node.getValue());
+                return applyFunction(func, calculateNode(node.getChildren().get(0)));
             /*
              If the node is an unary operation, apply it to the argument
              */
             case UNARYOP:
-                n1 = calculateNode(node.getChildren().get(0));
-                switch (node.getValue()) {
-                    case "+":
-                        if (n1.isDouble()) {
-                            return n1;
-                        } else {
-                            throw new TclExecutionException("Operation + is only applicable to numeric types", node);
-                        }
-                    case "-":
-                        if (n1.isLong()) {
-                            return new OpResult(-n1.getLong());
-                        } else if (n1.isDouble()) {
-                            return new OpResult(-n1.getDouble());
-                        } else {
-                            throw new TclExecutionException("Operation - is only applicable to numeric types", node);
-                        }
-                    case "!":
-                        if (n1.isDouble()) {
-                            return new OpResult((n1.getDouble() == 0) ? 1l : 0l);
-                        } else {
-                            throw new TclExecutionException("Operation ! is only applicable to numeric types", node);
-                        }
-                    case "~":
-                        if (n1.isLong()) {
-                            return new OpResult(~n1.getLong());
-                        } else {
-                            throw new TclExecutionException("Operation ~ is only applicable to integer types", node);
-                        }
-                }
-                break;
+                return applyUnaryOperation(node, calculateNode(node.getChildren().get(0)));
             /*
              If the node is a binary operation, apply it to its two arguments
              */
             case BINARYOP:
                 n1 = calculateNode(node.getChildren().get(0));
-                n2 = calculateNode(node.getChildren().get(1));
-                switch (node.getValue()) {
-                    case "+":
-                        if (n1.isLong() && n2.isLong()) {
-                            return new OpResult(n1.getLong() + n2.getLong());
-                        } else if (n1.isDouble() && n2.isDouble()) {
-                            return new OpResult(n1.getDouble() + n2.getDouble());
-                        } else {
-                            return new OpResult(n1.toString() + n2.toString());
-                        }
-                    case "-":
-                        if (n1.isLong() && n2.isLong()) {
-                            return new OpResult(n1.getLong() - n2.getLong());
-                        } else if (n1.isDouble() && n2.isDouble()) {
-                            return new OpResult(n1.getDouble() - n2.getDouble());
-                        } else {
-                            throw new TclExecutionException("Operation - is only applicable to numeric types", node);
-                        }
-                    case "*":
-                        if (n1.isLong() && n2.isLong()) {
-                            return new OpResult(n1.getLong() * n2.getLong());
-                        } else if (n1.isDouble() && n2.isDouble()) {
-                            return new OpResult(n1.getDouble() * n2.getDouble());
-                        } else {
-                            throw new TclExecutionException("Operation * is only applicable to numeric types", node);
-                        }
-                    case "/":
-                        if (n1.isLong() && n2.isLong()) {
-                            return new OpResult(n1.getLong() / n2.getLong());
-                        } else if (n1.isDouble() && n2.isDouble()) {
-                            return new OpResult(n1.getDouble() / n2.getDouble());
-                        } else {
-                            throw new TclExecutionException("Operation / is only applicable to numeric types", node);
-                        }
-                    case "%":
-                        if (n1.isLong() && n2.isLong()) {
-                            return new OpResult(n1.getLong() % n2.getLong());
-                        } else {
-                            throw new TclExecutionException("Operation % is only applicable to integer types", node);
-                        }
-                    case "**":
-                        if (n1.isLong() && n2.isLong()) {
-                            return new OpResult(Math.pow(n1.getLong(), n2.getLong()));
-                        } else if (n1.isDouble() && n2.isDouble()) {
-                            return new OpResult(Math.pow(n1.getDouble(), n2.getDouble()));
-                        } else {
-                            throw new TclExecutionException("Operation ** is only applicable to numeric types", node);
-                        }
-                    case "<<":
-                        if (n1.isLong() && n2.isLong()) {
-                            return new OpResult(n1.getLong() << n2.getLong());
-                        } else {
-                            throw new TclExecutionException("Operation << is only applicable to integer types", node);
-                        }
-                    case ">>":
-                        if (n1.isLong() && n2.isLong()) {
-                            return new OpResult(n1.getLong() >> n2.getLong());
-                        } else {
-                            throw new TclExecutionException("Operation >> is only applicable to integer types", node);
-                        }
-                    case ">":
-                        if (n1.isDouble() && n2.isDouble()) {
-                            return new OpResult((long) (n1.getDouble() > n2.getDouble() ? 1 : 0));
-                        } else {
-                            throw new TclExecutionException("Operation > is only applicable to numeric types", node);
-                        }
-                    case "<":
-                        if (n1.isDouble() && n2.isDouble()) {
-                            return new OpResult((long) (n1.getDouble() < n2.getDouble() ? 1 : 0));
-                        } else {
-                            throw new TclExecutionException("Operation < is only applicable to numeric types", node);
-                        }
-                    case ">=":
-                        if (n1.isDouble() && n2.isDouble()) {
-                            return new OpResult((long) (n1.getDouble() >= n2.getDouble() ? 1 : 0));
-                        } else {
-                            throw new TclExecutionException("Operation >= is only applicable to numeric types", node);
-                        }
-                    case "<=":
-                        if (n1.isDouble() && n2.isDouble()) {
-                            return new OpResult((long) (n1.getDouble() <= n2.getDouble() ? 1 : 0));
-                        } else {
-                            throw new TclExecutionException("Operation <= is only applicable to numeric types", node);
-                        }
-                    case "eq":
-                        if (n1.isDouble() && n2.isDouble()) {
-                            return new OpResult(n1.getDouble() == n2.getDouble() ? 1l : 0l);
-                        } else {
-                            return new OpResult(n1.toString().equals(n2.toString()) ? 1l : 0l);
-                        }
-                    case "ne":
-                        if (n1.isDouble() && n2.isDouble()) {
-                            return new OpResult(n1.getDouble() != n2.getDouble() ? 1l : 0l);
-                        } else {
-                            return new OpResult(!n1.toString().equals(n2.toString()) ? 1l : 0l);
-                        }
-                    case "&":
-                        if (n1.isLong() && n2.isLong()) {
-                            return new OpResult(n1.getLong() & n2.getLong());
-                        } else {
-                            throw new TclExecutionException("Operation & is only applicable to integer types", node);
-                        }
-                    case "^":
-                        if (n1.isLong() && n2.isLong()) {
-                            return new OpResult(n1.getLong() ^ n2.getLong());
-                        } else {
-                            throw new TclExecutionException("Operation ^ is only applicable to integer types", node);
-                        }
-                    case "|":
-                        if (n1.isLong() && n2.isLong()) {
-                            return new OpResult(n1.getLong() | n2.getLong());
-                        } else {
-                            throw new TclExecutionException("Operation | is only applicable to integer types", node);
-                        }
-                    case "&&":
-                        if (n1.isDouble() && n2.isDouble()) {
-                            return new OpResult((n1.getDouble() != 0 && n2.getDouble() != 0) ? 1l : 0l);
-                        } else {
-                            throw new TclExecutionException("Operation && is only applicable to numeric types", node);
-                        }
-                    case "||":
-                        if (n1.isDouble() && n2.isDouble()) {
-                            return new OpResult((n1.getDouble() != 0 || n2.getDouble() != 0) ? 1l : 0l);
-                        } else {
-                            throw new TclExecutionException("Operation || is only applicable to numeric types", node);
-                        }
+                //The second argument of logical operations is only evaluated if needed
+                if (isLogicalOperation(node) && (n2 = shortCircuit(node, n1)) != null) {
+                    return n2;
                 }
-                break;
+                n2 = calculateNode(node.getChildren().get(1));
+                return applyBinaryOperation(node, n1, n2);
             /*
-             If the node is a ternary operation, apply it to its three arguments
+             If the node is a ternary operation, evaluate the chosen argument
              */
             case TERNARYOP:
                 n1 = calculateNode(node.getChildren().get(0));
-                n2 = calculateNode(node.getChildren().get(1));
-                n3 = calculateNode(node.getChildren().get(2));
+                return calculateNode(node.getChildren().get(chooseBranch(node, n1) ? 1 : 2));
+            default:
+                throw new TclExecutionException("Unknown node type", node);
+        }
+    }
+
+    /**
+     * Applying a mathematical function to its argument
+     *
+     * @param func the function node
+     * @param arg the argument
+     * @return
+     * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
+     */
+    protected static OpResult applyFunction(TclFunctionNode func, OpResult arg) throws TclExecutionException {
+        //If the argument is integer then check function accepting an integer argument
+        if (arg.isLong() && func.longToDouble != null) {
+            return new OpResult(func.longToDouble.applyAsDouble(arg.getLong()));
+        }
+        //If the argument is integer or double then check function accepting a double argument
+        if (arg.isDouble()) {
+            if (func.doubleToLong != null) {
+                return new OpResult(func.doubleToLong.applyAsLong(arg.getDouble()));
+            } else if (func.doubleToDouble != null) {
+                return new OpResult(func.doubleToDouble.applyAsDouble(arg.getDouble()));
+            }
+        }
+        throw new TclExecutionException("Unknown mathematical function or not numerical argument!", func);
+    }
+
+    /**
+     * Applying an unary operation to its argument
+     *
+     * @param node the operation node
+     * @param n1 the argument
+     * @return
+     * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
+     */
+    protected static OpResult applyUnaryOperation(TclNode node, OpResult n1) throws TclExecutionException {
+        switch (node.getValue()) {
+            case "+":
                 if (n1.isDouble()) {
-                    return n1.getDouble() != 0
-                            ? (n2.isLong() ? new OpResult(n2.getLong()) : (n2.isDouble() ? new OpResult(n2.getDouble()) : new OpResult(n2.toString())))
-                            : (n3.isLong() ? new OpResult(n3.getLong()) : (n3.isDouble() ? new OpResult(n3.getDouble()) : new OpResult(n3.toString())));
+                    return n1;
                 } else {
-                    throw new TclExecutionException("The first argument of a ternary operation must be a number!", node);
+                    throw new TclExecutionException("Operation + is only applicable to numeric types", node);
+                }
+            case "-":
+                if (n1.isLong()) {
+                    return new OpResult(-n1.getLong());
+                } else if (n1.isDouble()) {
+                    return new OpResult(-n1.getDouble());
+                } else {
+                    throw new TclExecutionException("Operation - is only applicable to numeric types", node);
+                }
+            case "!":
+                if (n1.isDouble()) {
+                    return new OpResult((n1.getDouble() == 0) ? 1l : 0l);
+                } else {
+                    throw new TclExecutionException("Operation ! is only applicable to numeric types", node);
+                }
+            case "~":
+                if (n1.isLong()) {
+                    return new OpResult(~n1.getLong());
+                } else {
+                    throw new TclExecutionException("Operation ~ is only applicable to integer types", node);
+                }
+        }
+        return n1;
+    }
+
+    /**
+     * Applying a binary operation to its two arguments
+     *
+     * @param node the operation node
+     * @param n1 the first argument
+     * @param n2 the second argument
+     * @return
+     * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
+     */
+    protected static OpResult applyBinaryOperation(TclNode node, OpResult n1, OpResult n2) throws TclExecutionException {
+        switch (node.getValue()) {
+            case "+":
+                if (n1.isLong() && n2.isLong()) {
+                    return new OpResult(n1.getLong() + n2.getLong());
+                } else if (n1.isDouble() && n2.isDouble()) {
+                    return new OpResult(n1.getDouble() + n2.getDouble());
+                } else {
+                    return new OpResult(n1.toString() + n2.toString());
+                }
+            case "-":
+                if (n1.isLong() && n2.isLong()) {
+                    return new OpResult(n1.getLong() - n2.getLong());
+                } else if (n1.isDouble() && n2.isDouble()) {
+                    return new OpResult(n1.getDouble() - n2.getDouble());
+                } else {
+                    throw new TclExecutionException("Operation - is only applicable to numeric types", node);
+                }
+            case "*":
+                if (n1.isLong() && n2.isLong()) {
+                    return new OpResult(n1.getLong() * n2.getLong());
+                } else if (n1.isDouble() && n2.isDouble()) {
+                    return new OpResult(n1.getDouble() * n2.getDouble());
+                } else {
+                    throw new TclExecutionException("Operation * is only applicable to numeric types", node);
+                }
+            case "/":
+                if (n1.isLong() && n2.isLong()) {
+                    return new OpResult(n1.getLong() / n2.getLong());
+                } else if (n1.isDouble() && n2.isDouble()) {
+                    return new OpResult(n1.getDouble() / n2.getDouble());
+                } else {
+                    throw new TclExecutionException("Operation / is only applicable to numeric types", node);
+                }
+            case "%":
+                if (n1.isLong() && n2.isLong()) {
+                    return new OpResult(n1.getLong() % n2.getLong());
+                } else {
+                    throw new TclExecutionException("Operation % is only applicable to integer types", node);
+                }
+            case "**":
+                if (n1.isLong() && n2.isLong()) {
+                    return new OpResult(Math.pow(n1.getLong(), n2.getLong()));
+                } else if (n1.isDouble() && n2.isDouble()) {
+                    return new OpResult(Math.pow(n1.getDouble(), n2.getDouble()));
+                } else {
+                    throw new TclExecutionException("Operation ** is only applicable to numeric types", node);
+                }
+            case "<<":
+                if (n1.isLong() && n2.isLong()) {
+                    return new OpResult(n1.getLong() << n2.getLong());
+                } else {
+                    throw new TclExecutionException("Operation << is only applicable to integer types", node);
+                }
+            case ">>":
+                if (n1.isLong() && n2.isLong()) {
+                    return new OpResult(n1.getLong() >> n2.getLong());
+                } else {
+                    throw new TclExecutionException("Operation >> is only applicable to integer types", node);
+                }
+            case ">":
+                if (n1.isDouble() && n2.isDouble()) {
+                    return new OpResult((long) (n1.getDouble() > n2.getDouble() ? 1 : 0));
+                } else {
+                    throw new TclExecutionException("Operation > is only applicable to numeric types", node);
+                }
+            case "<":
+                if (n1.isDouble() && n2.isDouble()) {
+                    return new OpResult((long) (n1.getDouble() < n2.getDouble() ? 1 : 0));
+                } else {
+                    throw new TclExecutionException("Operation < is only applicable to numeric types", node);
+                }
+            case ">=":
+                if (n1.isDouble() && n2.isDouble()) {
+                    return new OpResult((long) (n1.getDouble() >= n2.getDouble() ? 1 : 0));
+                } else {
+                    throw new TclExecutionException("Operation >= is only applicable to numeric types", node);
+                }
+            case "<=":
+                if (n1.isDouble() && n2.isDouble()) {
+                    return new OpResult((long) (n1.getDouble() <= n2.getDouble() ? 1 : 0));
+                } else {
+                    throw new TclExecutionException("Operation <= is only applicable to numeric types", node);
+                }
+            case "eq":
+                if (n1.isDouble() && n2.isDouble()) {
+                    return new OpResult(n1.getDouble() == n2.getDouble() ? 1l : 0l);
+                } else {
+                    return new OpResult(n1.toString().equals(n2.toString()) ? 1l : 0l);
+                }
+            case "ne":
+                if (n1.isDouble() && n2.isDouble()) {
+                    return new OpResult(n1.getDouble() != n2.getDouble() ? 1l : 0l);
+                } else {
+                    return new OpResult(!n1.toString().equals(n2.toString()) ? 1l : 0l);
+                }
+            case "&":
+                if (n1.isLong() && n2.isLong()) {
+                    return new OpResult(n1.getLong() & n2.getLong());
+                } else {
+                    throw new TclExecutionException("Operation & is only applicable to integer types", node);
+                }
+            case "^":
+                if (n1.isLong() && n2.isLong()) {
+                    return new OpResult(n1.getLong() ^ n2.getLong());
+                } else {
+                    throw new TclExecutionException("Operation ^ is only applicable to integer types", node);
+                }
+            case "|":
+                if (n1.isLong() && n2.isLong()) {
+                    return new OpResult(n1.getLong() | n2.getLong());
+                } else {
+                    throw new TclExecutionException("Operation | is only applicable to integer types", node);
+                }
+            case "&&":
+                if (n1.isDouble() && n2.isDouble()) {
+                    return new OpResult((n1.getDouble() != 0 && n2.getDouble() != 0) ? 1l : 0l);
+                } else {
+                    throw new TclExecutionException("Operation && is only applicable to numeric types", node);
+                }
+            case "||":
+                if (n1.isDouble() && n2.isDouble()) {
+                    return new OpResult((n1.getDouble() != 0 || n2.getDouble() != 0) ? 1l : 0l);
+                } else {
+                    throw new TclExecutionException("Operation || is only applicable to numeric types", node);
                 }
-            default:
-                throw new TclExecutionException("Unknown node type", node);
         }
         return n1;
     }
 
+    /**
+     * Is it the operation && or ||, whose second argument is evaluated only
+     * if needed?
+     *
+     * @param node the operation node
+     * @return
+     */
+    protected static boolean isLogicalOperation(TclNode node) {
+        return node.getValue().equals("&&") || node.getValue().equals("||");
+    }
+
+    /**
+     * Returning the result of a logical operation if it is determined by its
+     * first argument
+     *
+     * @param node the operation node
+     * @param n1 the first argument
+     * @return the result or null if the second argument is needed
+     * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
+     */
+    protected static OpResult shortCircuit(TclNode node, OpResult n1) throws TclExecutionException {
+        if (!n1.isDouble()) {
+            throw new TclExecutionException("Operation " + node.getValue() + " is only applicable to numeric types", node);
+        }
+        boolean value = n1.getDouble() != 0;
+        if (value == node.getValue().equals("||")) {
+            return new OpResult(value ? 1l : 0l);
+        }
+        return null;
+    }
+
+    /**
+     * Choosing the argument of a ternary operation
+     *
+     * @param node the operation node
+     * @param n1 the condition
+     * @return true for the first choice and false for the second one
+     * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
+     */
+    protected static boolean chooseBranch(TclNode node, OpResult n1) throws TclExecutionException {
+        if (n1.isDouble()) {
+            return n1.getDouble() != 0;
+        } else {
+            throw new TclExecutionException("The first argument of a ternary operation must be a number!", node);
+        }
+    }
+
     /**
      * Interpreting a string as a number
      *
      * @param number a number to read in form of a string
      * @return
      */
-    protected OpResult readNumber(String number) {
+    protected static OpResult readNumber(String number) {
         if (!number.isEmpty()) {
             //If not empty try a long type then a double type
-            try {
-                return new OpResult(Long.parseLong(number));
-            } catch (NumberFormatException ex) {
-            }
-            try {
-                return new OpResult(Double.parseDouble(number));
-            } catch (NumberFormatException ex) {
-                return new OpResult(number);
-            }
+            OpResult result = TclNumberScanner.scan(number);
+            return result == null ? new OpResult(number) : result;
         } else {
             //If empty return zero
             return new OpResult(0l);
         }
     }
 
+    /**
+     * Returning the Tcl interpreter for substitutions or throwing an exception
+     * if there is none
+     *
+     * @param node the node requiring substitution
+     * @return
+     * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
+     */
+    protected TclInterpreter getInterpreter(TclNode node) throws TclExecutionException {
+        if (interpreter == null) {
+            throw new TclExecutionException("Substitutions are not available in this expression!", node);
+        }
+        return interpreter;
+    }
+
+    /**
+     * Evaluating an already parsed expression
+     *
+     * @param root the root node of the expression
+     * @return
+     * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
+     */
+    public String evaluate(TclNode root) throws TclExecutionException {
+        return calculateNode(root).toString();
+    }
+
     @Override
     public String run() throws AbstractTclParser.TclParserError, TclExecutionException {
-        String result = calculateNode(parser.parse()).toString();
+        String result = evaluate(parser.parse());
         return result;
     }
 
     /**
-     * An inner class for operation results
+     * A class for operation results with primitive numeric values. The
+     * string form of numeric results is only created when requested.
      */
-    protected class OpResult {
+    protected static class OpResult {
 
-        private final Long intvalue;
-        private final Double doublevalue;
-        private final String svalue;
+        /**
+         * The type of the value
+         */
+        private final OpType type;
+        private final long intvalue;
+        private final double doublevalue;
+        private String svalue;
 
         /**
          * Constructor for double numbers
          *
          * @param value
          */
-        public OpResult(Double value) {
+        public OpResult(double value) {
+            this.type = OpType.DOUBLE;
             this.doublevalue = value;
-            this.intvalue = null;
-            this.svalue = value.toString();
+            this.intvalue = 0;
+            this.svalue = null;
         }
 
         /**
@@ -373,10 +508,11 @@ public class TclExpressionInterpreter extends AbstractTclInterpreter {
          *
          * @param value
          */
-        public OpResult(Long value) {
-            this.doublevalue = value.doubleValue();
+        public OpResult(long value) {
+            this.type = OpType.LONG;
+            this.doublevalue = value;
             this.intvalue = value;
-            this.svalue = value.toString();
+            this.svalue = null;
         }
 
         /**
@@ -385,8 +521,9 @@ public class TclExpressionInterpreter extends AbstractTclInterpreter {
          * @param value
          */
         public OpResult(String value) {
-            this.doublevalue = null;
-            this.intvalue = null;
+            this.type = OpType.STRING;
+            this.doublevalue = 0;
+            this.intvalue = 0;
             this.svalue = value;
         }
 
@@ -396,7 +533,7 @@ public class TclExpressionInterpreter extends AbstractTclInterpreter {
          * @return
          */
         public boolean isDouble() {
-            return doublevalue != null;
+            return type != OpType.STRING;
         }
 
         /**
@@ -405,7 +542,7 @@ public class TclExpressionInterpreter extends AbstractTclInterpreter {
          * @return
          */
         public boolean isLong() {
-            return intvalue != null;
+            return type == OpType.LONG;
         }
 
         /**
@@ -414,7 +551,7 @@ public class TclExpressionInterpreter extends AbstractTclInterpreter {
          * @return
          */
         public boolean isString() {
-            return doublevalue == null && intvalue == null;
+            return type == OpType.STRING;
         }
 
         /**
@@ -436,13 +573,26 @@ public class TclExpressionInterpreter extends AbstractTclInterpreter {
         }
 
         /**
-         * Returnning String value
+         * Returnning String value, which is created on the first call for
+         * numbers
          *
          * @return
          */
         @Override
         public String toString() {
+            if (svalue == null) {
+                svalue = type == OpType.LONG ? Long.toString(intvalue) : Double.toString(doublevalue);
+            }
             return svalue;
         }
     }
+
+    /**
+     * An enumeration for the types of operation results
+     */
+    protected static enum OpType {
+        LONG,
+        DOUBLE,
+        STRING
+    }
 }
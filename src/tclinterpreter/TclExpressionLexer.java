@@ -26,6 +26,11 @@ public class TclExpressionLexer extends AbstractTclLexer {
 
     protected boolean qflag = false;
 
+    /**
+     * Flag indicating that the lexer is inside brackets
+     */
+    protected boolean brflag = false;
+
     /**
      * Constructor
      *
@@ -40,14 +45,14 @@ public class TclExpressionLexer extends AbstractTclLexer {
      *
      * @return
      */
-    protected String readNumber() {
+    protected TclToken readNumber() {
         /*
         If this is an octal number?
          */
-        if (getCurrentchar() == '0' && Character.isDigit(peek())) {
+        if (getCurrentchar() == '0' && isDigit(peek())) {
             String oNumber = readOctalNumber();
             advancePosition();
-            return oNumber;
+            return new TclToken(TclTokenType.NUMBER).setValue(oNumber);
         }
         /*
         If this is an hex number?
@@ -56,24 +61,22 @@ public class TclExpressionLexer extends AbstractTclLexer {
             advancePosition();
             String hNumber = readHexNumber();
             advancePosition();
-            return hNumber;
+            return new TclToken(TclTokenType.NUMBER).setValue(hNumber);
         }
-        StringBuilder number = new StringBuilder("");
+        beginToken();
         /*
          This is a number if didgit, dot and exponetial characters are present     
          */
-        while (Character.isDigit(getCurrentchar())
+        while (isDigit(getCurrentchar())
                 || getCurrentchar() == '.'
-                || (Character.toLowerCase(getCurrentchar()) == 'e'
+                || ((getCurrentchar() == 'e' || getCurrentchar() == 'E')
                 && ((peek() == '-') || peek() == '+'))) {
-            number.append(getCurrentchar());
-            advancePosition();
-            if (Character.toLowerCase(peekback()) == 'e') {
-                number.append(getCurrentchar());
-                advancePosition();
+            consumeChar();
+            if (peekback() == 'e' || peekback() == 'E') {
+                consumeChar();
             }
         }
-        return number.toString();
+        return endToken(TclTokenType.NUMBER);
     }
 
     /**
@@ -81,13 +84,12 @@ public class TclExpressionLexer extends AbstractTclLexer {
      *
      * @return
      */
-    protected String readString() {
-        StringBuilder string = new StringBuilder("");
+    protected TclToken readString() {
+        beginToken();
         while (getCurrentchar() != '"' && getCurrentchar() != 0) {
-            string.append(getCurrentchar());
-            advancePosition();
+            consumeChar();
         }
-        return string.toString();
+        return endToken(TclTokenType.STRING);
     }
     
     /**
@@ -96,21 +98,66 @@ public class TclExpressionLexer extends AbstractTclLexer {
      *
      * @return
      */
-    protected String readFunctionName() {
-        StringBuilder name = new StringBuilder("");
-        while ((Character.isDigit(getCurrentchar())
-                || Character.isLetter(getCurrentchar())
-                || getCurrentchar() == '_'
+    protected TclToken readFunctionName() {
+        beginToken();
+        while ((isNameChar(getCurrentchar())
                 || getCurrentchar() == '\\') && getCurrentchar() != 0) {
             if (getCurrentchar() == '\\') {
                 //Doing slash substitutions
-                name.append(replaceSymbol());
+                consumeSymbol();
             } else {
-                name.append(getCurrentchar());
-                advancePosition();
+                consumeChar();
+            }
+        }
+        return endToken(TclTokenType.NAME);
+    }
+
+    /**
+     * Reading alphanumerical names of variables (with possible index in
+     * parentheses) from the script
+     *
+     * @return
+     */
+    protected TclToken readVariableName() {
+        beginToken();
+        int counter = 0; //Parentheses counter
+        while ((isNameChar(getCurrentchar())
+                || getCurrentchar() == '('
+                || (getCurrentchar() == ')' && counter > 0))
+                && getCurrentchar() != 0) {
+            //Incrementing or decrementing parentheses counter
+            if (getCurrentchar() == '(') {
+                counter++;
+            } else if (getCurrentchar() == ')') {
+                counter--;
             }
+            consumeChar();
         }
-        return name.toString();
+        return endToken(TclTokenType.NAME);
+    }
+
+    /**
+     * Reading a command string in brackets with nested brackets balanced
+     *
+     * @return
+     */
+    protected TclToken readCommandString() {
+        beginToken();
+        //Counter of nested brackets
+        int counter = 1;
+        while (getCurrentchar() != 0) {
+            //Icreamenting or decreamenting the nested bracket counter
+            if (getCurrentchar() == '[') {
+                counter++;
+            } else if (getCurrentchar() == ']') {
+                counter--;
+            }
+            if (counter == 0) {
+                break;
+            }
+            consumeChar();
+        }
+        return endToken(TclTokenType.STRING);
     }
 
     @Override
@@ -120,12 +167,44 @@ public class TclExpressionLexer extends AbstractTclLexer {
             /*
              Reading and returning a string of symbols
              */
-            return new TclToken(TclTokenType.STRING).setValue(readString());
-        } else if (Character.isDigit(getCurrentchar())) {
+            return readString();
+        } else if (brflag && getCurrentchar() != ']') {
+            /*
+             Reading and returning a command string
+             */
+            brflag = false;
+            return readCommandString();
+        } else if (getCurrentchar() == '[') {
+            /*
+             Returning a left bracket token
+             */
+            brflag = true;
+            advancePosition();
+            return new TclToken(TclTokenType.LEFTBR);
+        } else if (getCurrentchar() == ']') {
+            /*
+             Returning a right bracket token
+             */
+            brflag = false;
+            advancePosition();
+            return new TclToken(TclTokenType.RIGHTBR);
+        } else if (getCurrentchar() == '$') {
+            /*
+             Returning a dollar token
+             */
+            advancePosition();
+            return new TclToken(TclTokenType.DOLLAR);
+        } else if (isNameStart(getCurrentchar())
+                && peekback() == '$') {
+            /*
+             Returning a variable name token
+             */
+            return readVariableName();
+        } else if (isDigit(getCurrentchar())) {
             /*
              Returning a real number token
              */
-            return new TclToken(TclTokenType.NUMBER).setValue(readNumber());
+            return readNumber();
         } else if (getCurrentchar() == '+') {
             /*
              Returning a plus op token
@@ -313,11 +392,11 @@ public class TclExpressionLexer extends AbstractTclLexer {
             qflag = false;
             advancePosition();
             return new TclToken(TclTokenType.RIGHTQ);
-        } else if (Character.isLetter(getCurrentchar()) || getCurrentchar() == '_') {
+        } else if (isNameStart(getCurrentchar())) {
             /*
              Returning a function name token
              */
-            return new TclToken(TclTokenType.NAME).setValue(readFunctionName());
+            return readFunctionName();
         } else {
             return null;
         }
@@ -17,7 +17,6 @@
 package tclinterpreter;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -36,9 +35,11 @@ public class TclExpressionParser extends AbstractTclParser {
     protected static final List<Set<TclTokenType>> OPLEVELLIST;
 
     /**
-     * A set of all binary operation types
+     * The precedences of binary operations by the ordinals of their token
+     * types, the operations of the first level having the highest precedence.
+     * Zero is for the tokens, which are not binary operations.
      */
-    protected static final Set<TclTokenType> OPSET;
+    protected static final int[] PRECEDENCES = new int[TclTokenType.values().length];
 
     static {
         OPLEVELLIST = new ArrayList<>();
@@ -53,10 +54,11 @@ public class TclExpressionParser extends AbstractTclParser {
         OPLEVELLIST.add(Stream.of(TclTokenType.AND).collect(Collectors.toSet()));
         OPLEVELLIST.add(Stream.of(TclTokenType.OR).collect(Collectors.toSet()));
 
-        OPSET = new HashSet<>();
-        OPLEVELLIST.stream().forEach(set -> {
-            OPSET.addAll(set);
-        });
+        for (int level = 0; level < OPLEVELLIST.size(); level++) {
+            for (TclTokenType type : OPLEVELLIST.get(level)) {
+                PRECEDENCES[type.ordinal()] = OPLEVELLIST.size() - level;
+            }
+        }
     }
 
     /**
@@ -86,7 +88,8 @@ public class TclExpressionParser extends AbstractTclParser {
          * If it begins with a number, return it. If it begins with an opening paranthesis get the expression in paranthesis
          */
         advanceToken(TclTokenType.NUMBER, TclTokenType.NAME, TclTokenType.LEFTPAR,
-                TclTokenType.NOT, TclTokenType.BNOT, TclTokenType.PLUS, TclTokenType.MINUS, TclTokenType.LEFTQ);
+                TclTokenType.NOT, TclTokenType.BNOT, TclTokenType.PLUS, TclTokenType.MINUS, TclTokenType.LEFTQ,
+                TclTokenType.DOLLAR, TclTokenType.LEFTBR);
         switch (currenttoken.type) {
             case LEFTQ:
                 /*
@@ -94,20 +97,38 @@ public class TclExpressionParser extends AbstractTclParser {
                  */
                 advanceToken(TclTokenType.STRING, TclTokenType.RIGHTQ);
                 if (currenttoken.type == TclTokenType.STRING) {
-                    node = new TclNode(TclNodeType.STRING).setValue(currenttoken.getValue());
+                    node = getQuotedString(currenttoken.getValue());
                     advanceToken(TclTokenType.RIGHTQ);
                 } else {
                     node = new TclNode(TclNodeType.STRING).setValue("");
                 }
                 checkRightParenthesis();
                 break;
+            case DOLLAR:
+                //A variable, which is substituted during evaluation
+                advanceToken(TclTokenType.NAME);
+                node = new TclNode(TclNodeType.NAME).setValue(currenttoken.getValue());
+                checkRightParenthesis();
+                break;
+            case LEFTBR:
+                //A command, which is substituted during evaluation
+                advanceToken(TclTokenType.STRING, TclTokenType.RIGHTBR);
+                if (currenttoken.type == TclTokenType.STRING) {
+                    node = new TclNode(TclNodeType.PROGRAM).setValue(currenttoken.getValue());
+                    advanceToken(TclTokenType.RIGHTBR);
+                } else {
+                    node = new TclNode(TclNodeType.PROGRAM).setValue("");
+                }
+                checkRightParenthesis();
+                break;
             case NUMBER:
                 //A number
                 node = new TclNode(TclNodeType.NUMBER).setValue(currenttoken.getValue());
                 checkRightParenthesis();
                 break;
             case NAME:
-                node = new TclNode(TclNodeType.FUNC).setValue(currenttoken.getValue());
+                //Binding the function to its implementation
+                node = new TclFunctionNode(currenttoken.getValue());
                 //A function name should have an openning parantheses just after it
                 advanceToken(TclTokenType.LEFTPAR);
                 fnumber++; //Increasing number of folded parantheses
@@ -142,22 +163,34 @@ public class TclExpressionParser extends AbstractTclParser {
         return node;
     }
 
+    /**
+     * Creating a string node for a quoted string. If the string contains
+     * substitutions, they are parsed as the children of the node.
+     *
+     * @param str
+     * @return
+     * @throws tclinterpreter.AbstractTclParser.TclParserError
+     */
+    protected TclNode getQuotedString(String str) throws TclParserError {
+        if (str.indexOf('$') == -1 && str.indexOf('[') == -1 && str.indexOf('\\') == -1) {
+            return new TclNode(TclNodeType.STRING).setValue(str);
+        }
+        return new TclStringParser(new TclStringLexer(str)).parse();
+    }
+
     /**
      * Checking that a factor is followed by a delimeter and closing parentheses
      *
      * @throws TclParserError
      */
     protected void checkRightParenthesis() throws TclParserError {
-        try {
-            advanceToken(TclTokenType.RIGHTPAR);
-        } catch (TclParserError error) {
-            if ((currenttoken.type != TclTokenType.EOF
-                    && currenttoken.type != TclTokenType.EXP
-                    && currenttoken.type != TclTokenType.QM
-                    && currenttoken.type != TclTokenType.COLON
-                    && !OPSET.contains(currenttoken.type))) {
-                throw error;
-            }
+        if (!acceptToken(TclTokenType.RIGHTPAR)
+                && currenttoken.type != TclTokenType.EOF
+                && currenttoken.type != TclTokenType.EXP
+                && currenttoken.type != TclTokenType.QM
+                && currenttoken.type != TclTokenType.COLON
+                && precedence(currenttoken.type) == 0) {
+            throw unexpectedToken(TclTokenType.RIGHTPAR);
         }
         if (currenttoken.type == TclTokenType.RIGHTPAR) {
             fnumber--;
@@ -192,33 +225,40 @@ public class TclExpressionParser extends AbstractTclParser {
     }
 
     /**
-     * Returning the expression with operations of the next priority level
+     * Returning the precedence of a binary operation
+     *
+     * @param type the token type
+     * @return the precedence or zero if it is not a binary operation
+     */
+    protected static int precedence(TclTokenType type) {
+        return PRECEDENCES[type.ordinal()];
+    }
+
+    /**
+     * Returning the expression with binary operations of at least the given
+     * precedence. Operations of the same precedence are left-associative.
      *
-     * @param level array with current expression level
+     * @param minprecedence the minimal precedence
      * @return
      * @throws tclinterpreter.AbstractTclParser.TclParserError
      * @throws tclinterpreter.TclExpressionParser.UnbalancedParenthesesException
      */
-    protected TclNode getExpressionLevel(int level) throws TclParserError, UnbalancedParenthesesException {
-        //If the last level, go to the exponent
-        if (level == -1) {
-            return getFactor2();
-        }
+    protected TclNode getBinaryExpression(int minprecedence) throws TclParserError, UnbalancedParenthesesException {
         //Temporal node variables
         TclNode arg;
         TclNode op;
+        int prec;
         /*
          Is the first token an argument?
          */
-        arg = getExpressionLevel(level - 1);
+        arg = getFactor2();
         /*
-         Cycling over the long expression
+         Cycling over operations, whose right arguments contain only the operations of higher precedence
          */
-        while (OPLEVELLIST.get(level).contains(currenttoken.type)) {
+        while ((prec = precedence(currenttoken.type)) >= minprecedence) {
             op = getBinaryOperation();
             op.getChildren().add(arg);
-            arg = getExpressionLevel(level - 1);
-            op.getChildren().add(arg);
+            op.getChildren().add(getBinaryExpression(prec + 1));
             arg = op;
         }
         return arg;
@@ -313,7 +353,7 @@ public class TclExpressionParser extends AbstractTclParser {
         /*
          Is the first token an argument?
          */
-        arg = getExpressionLevel(OPLEVELLIST.size() - 1);
+        arg = getBinaryExpression(1);
         /*
          Cycling over the long expression
          */
@@ -323,11 +363,11 @@ public class TclExpressionParser extends AbstractTclParser {
             //Logical expression
             op.getChildren().add(arg);
             //The first choice
-            arg = getExpressionLevel(OPLEVELLIST.size() - 1);
+            arg = getBinaryExpression(1);
             op.getChildren().add(arg);
             //If still tenary operation, get the second choice
             if (currenttoken.type == TclTokenType.COLON) {
-                arg = getExpressionLevel(OPLEVELLIST.size() - 1);
+                arg = getBinaryExpression(1);
                 op.getChildren().add(arg);
                 arg = op;
             } else {
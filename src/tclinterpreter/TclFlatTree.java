@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2016 Ruslan Feshchenko
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tclinterpreter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact immutable encoding of a TclNode tree in parallel arrays. Nodes
+ * are numbered in the breadth-first order, so the children of each node
+ * occupy a contiguous range of numbers, and equal values share one string in
+ * the pool. The root is the node 0.
+ *
+ * @author Ruslan Feshchenko
+ * @version 0.1
+ */
+public class TclFlatTree {
+
+    /**
+     * The node types by their ordinals
+     */
+    private static final TclNodeType[] NODETYPES = TclNodeType.values();
+
+    /**
+     * The ordinals of the node types
+     */
+    private final byte[] types;
+
+    /**
+     * The numbers of the first children
+     */
+    private final int[] firstChildren;
+
+    /**
+     * The numbers of children
+     */
+    private final int[] childCounts;
+
+    /**
+     * The indexes of values in the pool or -1 for null values
+     */
+    private final int[] values;
+
+    /**
+     * The pool of values
+     */
+    private final String[] pool;
+
+    /**
+     * Constructor
+     *
+     * @param types
+     * @param firstChildren
+     * @param childCounts
+     * @param values
+     * @param pool
+     */
+    protected TclFlatTree(byte[] types, int[] firstChildren, int[] childCounts, int[] values, String[] pool) {
+        this.types = types;
+        this.firstChildren = firstChildren;
+        this.childCounts = childCounts;
+        this.values = values;
+        this.pool = pool;
+    }
+
+    /**
+     * Encoding a node tree
+     *
+     * @param root
+     * @return
+     */
+    public static TclFlatTree of(TclNode root) {
+        List<TclNode> nodes = new ArrayList<>();
+        Map<String, Integer> indexes = new HashMap<>();
+        List<String> pool = new ArrayList<>();
+        nodes.add(root);
+        //Appending the children of each node in the breadth-first order
+        for (int i = 0; i < nodes.size(); i++) {
+            nodes.addAll(nodes.get(i).getChildren());
+        }
+        int size = nodes.size();
+        byte[] types = new byte[size];
+        int[] firstChildren = new int[size];
+        int[] childCounts = new int[size];
+        int[] values = new int[size];
+        int next = 1;
+        for (int i = 0; i < size; i++) {
+            TclNode node = nodes.get(i);
+            types[i] = (byte) node.type.ordinal();
+            firstChildren[i] = next;
+            childCounts[i] = node.getChildren().size();
+            next += childCounts[i];
+            String value = node.getValue();
+            if (value == null) {
+                values[i] = -1;
+            } else {
+                Integer index = indexes.get(value);
+                if (index == null) {
+                    index = pool.size();
+                    indexes.put(value, index);
+                    pool.add(value);
+                }
+                values[i] = index;
+            }
+        }
+        return new TclFlatTree(types, firstChildren, childCounts, values, pool.toArray(new String[pool.size()]));
+    }
+
+    /**
+     * Returning the number of nodes
+     *
+     * @return
+     */
+    public int size() {
+        return types.length;
+    }
+
+    /**
+     * Returning the type of a node
+     *
+     * @param node the node number
+     * @return
+     */
+    public TclNodeType getType(int node) {
+        return NODETYPES[types[node]];
+    }
+
+    /**
+     * Returning the value of a node
+     *
+     * @param node the node number
+     * @return
+     */
+    public String getValue(int node) {
+        int index = values[node];
+        return index < 0 ? null : pool[index];
+    }
+
+    /**
+     * Returning the number of children of a node
+     *
+     * @param node the node number
+     * @return
+     */
+    public int getChildCount(int node) {
+        return childCounts[node];
+    }
+
+    /**
+     * Returning a child of a node
+     *
+     * @param node the node number
+     * @param k the index of the child
+     * @return the number of the child
+     */
+    public int getChild(int node, int k) {
+        return firstChildren[node] + k;
+    }
+
+    /**
+     * Creating the TclNode tree of a node, for example to execute one command
+     * of a program
+     *
+     * @param node the node number
+     * @return
+     */
+    public TclNode toNode(int node) {
+        TclNodeType type = getType(node);
+        TclNode result = type == TclNodeType.FUNC
+                ? new TclFunctionNode(getValue(node)) : new TclNode(type).setValue(getValue(node));
+        for (int k = 0; k < childCounts[node]; k++) {
+            result.getChildren().add(toNode(firstChildren[node] + k));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2016 Ruslan Feshchenko
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tclinterpreter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A flight recorder keeping the most recent trace events in a ring buffer of
+ * a fixed capacity, so the memory used does not depend on how long a script
+ * runs. Events are stored in preallocated parallel arrays and long values are
+ * truncated.
+ *
+ * @author Ruslan Feshchenko
+ * @version 0.1
+ */
+public class TclFlightRecorder implements TclTraceListener {
+
+    /**
+     * The default number of events kept
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /**
+     * The maximal length of stored values
+     */
+    public static final int MAX_VALUE_LENGTH = 120;
+
+    /**
+     * The kinds of events
+     */
+    private final TclTraceEvent.Kind[] kinds;
+
+    /**
+     * The names
+     */
+    private final String[] names;
+
+    /**
+     * The indexes of array elements
+     */
+    private final String[] indexes;
+
+    /**
+     * The values
+     */
+    private final String[] values;
+
+    /**
+     * The times
+     */
+    private final long[] times;
+
+    /**
+     * The total number of recorded events
+     */
+    private long count = 0;
+
+    /**
+     * Constructor
+     *
+     * @param capacity the number of events kept
+     */
+    public TclFlightRecorder(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be positive!");
+        }
+        this.kinds = new TclTraceEvent.Kind[capacity];
+        this.names = new String[capacity];
+        this.indexes = new String[capacity];
+        this.values = new String[capacity];
+        this.times = new long[capacity];
+    }
+
+    /**
+     * Constructor with the default capacity
+     */
+    public TclFlightRecorder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    @Override
+    public synchronized void trace(TclTraceEvent event) {
+        int slot = (int) (count++ % kinds.length);
+        kinds[slot] = event.kind;
+        names[slot] = truncate(event.name);
+        indexes[slot] = truncate(event.index);
+        values[slot] = truncate(event.value);
+        times[slot] = event.time;
+    }
+
+    /**
+     * Returning the recorded events from the oldest to the most recent
+     *
+     * @return
+     */
+    public synchronized List<TclTraceEvent> getEvents() {
+        int size = (int) Math.min(count, kinds.length);
+        List<TclTraceEvent> events = new ArrayList<>(size);
+        for (long k = count - size; k < count; k++) {
+            int slot = (int) (k % kinds.length);
+            events.add(new TclTraceEvent(kinds[slot], names[slot], indexes[slot], values[slot], times[slot]));
+        }
+        return events;
+    }
+
+    /**
+     * Returning the number of events kept
+     *
+     * @return
+     */
+    public int getCapacity() {
+        return kinds.length;
+    }
+
+    /**
+     * Returning the total number of recorded events including the overwritten
+     * ones
+     *
+     * @return
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Deleting all events
+     */
+    public synchronized void clear() {
+        for (int k = 0; k < kinds.length; k++) {
+            kinds[k] = null;
+            names[k] = null;
+            indexes[k] = null;
+            values[k] = null;
+        }
+        count = 0;
+    }
+
+    /**
+     * Truncating long strings
+     *
+     * @param str
+     * @return
+     */
+    private static String truncate(String str) {
+        return str == null || str.length() <= MAX_VALUE_LENGTH ? str : str.substring(0, MAX_VALUE_LENGTH) + "...";
+    }
+
+    /**
+     * Returning the text form of the recorded events
+     *
+     * @return
+     */
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        getEvents().forEach(str::append);
+        return str.toString();
+    }
+}
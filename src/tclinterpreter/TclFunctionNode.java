@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2016 Ruslan Feshchenko
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tclinterpreter;
+
+import java.util.function.DoubleToLongFunction;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.LongToDoubleFunction;
+
+/**
+ * A class for mathematical function nodes, which are bound to their
+ * implementations when created
+ *
+ * @author Ruslan Feshchenko
+ * @version 0.1
+ */
+public class TclFunctionNode extends TclNode {
+
+    /**
+     * The double to double implementation or null
+     */
+    protected final DoubleUnaryOperator doubleToDouble;
+
+    /**
+     * The double to long implementation or null
+     */
+    protected final DoubleToLongFunction doubleToLong;
+
+    /**
+     * The long to double implementation or null
+     */
+    protected final LongToDoubleFunction longToDouble;
+
+    /**
+     * Constructor
+     *
+     * @param name the function name
+     */
+    public TclFunctionNode(String name) {
+        super(TclNodeType.FUNC);
+        setValue(name);
+        this.doubleToDouble = TclExpressionInterpreter.DOUBLETODOUBLEFUNCTIONS.get(name);
+        this.doubleToLong = TclExpressionInterpreter.DOUBLETOLONGFUNCTIONS.get(name);
+        this.longToDouble = TclExpressionInterpreter.LONGTODOUBLEFUNCTIONS.get(name);
+    }
+
+    /**
+     * Is there a function with this name?
+     *
+     * @return
+     */
+    public boolean isDefined() {
+        return doubleToDouble != null || doubleToLong != null || longToDouble != null;
+    }
+}
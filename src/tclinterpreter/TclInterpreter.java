@@ -16,10 +16,12 @@
  */
 package tclinterpreter;
 
+import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.FileSystems;
 import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.Formatter;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -29,8 +31,6 @@ import java.util.IllegalFormatException;
 import java.util.Map;
 import java.util.MissingFormatArgumentException;
 import java.util.NoSuchElementException;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 /**
  * This class interpretes Tcl scripts
@@ -41,10 +41,48 @@ import java.util.logging.Logger;
 public class TclInterpreter extends AbstractTclInterpreter {
 
     /**
-     * A map containing all Tcl commands
+     * A shared immutable map of built-in Tcl commands
+     */
+    public static final Map<String, TclBuiltinCommand> BUILTINS;
+
+    /**
+     * A map containing Tcl commands defined for this interpreter. These
+     * commands override built-in commands with the same names. The map is
+     * shared with sub-interpreters.
      *
      */
-    public final Map<String, TclCommand<TclNode, TclList>> COMMANDS = new HashMap<>();
+    public final TclCommandRegistry COMMANDS;
+
+    /**
+     * A shared cache of parsed scripts, which are executed repeatedly such as
+     * cycle bodies and branches
+     */
+    public static final TclParseCache<TclNode> SCRIPTCACHE = new TclParseCache<>();
+
+    /**
+     * A shared cache of compiled scripts
+     */
+    public static final TclParseCache<TclByteCode> CODECACHE = new TclParseCache<>();
+
+    /**
+     * A shared cache of compiled expressions
+     */
+    public static final TclParseCache<TclByteCode> EXPRESSIONCACHE = new TclParseCache<>();
+
+    /**
+     * The maximal length of the argument digests of traced commands
+     */
+    public static final int DIGEST_LENGTH = 80;
+
+    /**
+     * The virtual machine executing compiled code for this interpreter
+     */
+    protected TclVirtualMachine vm = null;
+
+    /**
+     * Should the script be executed command by command as it is parsed?
+     */
+    protected boolean streaming = false;
 
     /**
      * Constructor, which sets up the interpreter with an attached parser
@@ -56,6 +94,7 @@ public class TclInterpreter extends AbstractTclInterpreter {
      */
     public TclInterpreter(TclParser parser, TclInterpreterContext context, boolean newcontext) {
         super(parser, context, newcontext);
+        this.COMMANDS = new TclCommandRegistry();
     }
 
     /**
@@ -71,27 +110,58 @@ public class TclInterpreter extends AbstractTclInterpreter {
      */
     public TclInterpreter(AbstractTclParser parser, TclInterpreterContext context, boolean newcontext, OutputStream out, String encoding) {
         super(parser, context, newcontext, out, encoding);
+        this.COMMANDS = new TclCommandRegistry();
+    }
+
+    /**
+     * A full constructor with output channel
+     *
+     * @param parser a Tcl parser to use
+     * @param context the upper level context pointer or the current context
+     * pointer
+     * @param newcontext Should a new context should be created of a given
+     * context used
+     * @param out an output channel, which may be shared with other
+     * interpreters
+     */
+    public TclInterpreter(AbstractTclParser parser, TclInterpreterContext context, boolean newcontext, TclOutputChannel out) {
+        super(parser, context, newcontext, out);
+        this.COMMANDS = new TclCommandRegistry();
     }
 
     /**
-     * Initializing keywords map
+     * Constructor of a sub-interpreter with a new context under the context
+     * of the parent. The output channel and the trace listener of the parent
+     * are shared.
+     *
+     * @param parser
+     * @param parent
      */
-    {
+    public TclInterpreter(TclParser parser, TclInterpreter parent) {
+        this(parser, parent.context, true, parent.out);
+        this.tracer = parent.tracer;
+    }
+
+    /**
+     * Initializing the built-in commands map
+     */
+    static {
+        Map<String, TclBuiltinCommand> builtins = new HashMap<>();
         /*
          Empty command
          */
-        COMMANDS.put("eof", new GenericTclCommand("set", 0, (TclCommand<TclNode, TclList>) (TclNode node) -> {
+        builtins.put("eof", new TclBuiltinCommand("set", 0, (TclInterpreter interp, TclNode node) -> {
             TclList list = new TclList();
             return list;
         }));
         /*
          'Set' command definition
          */
-        COMMANDS.put("set", new GenericTclCommand("set", 1, (TclCommand<TclNode, TclList>) (TclNode node) -> {
+        builtins.put("set", new TclBuiltinCommand("set", 1, (TclInterpreter interp, TclNode node) -> {
             String value;
             String index = null;
             TclList list = new TclList();
-            String name = readOpNode(node.getChildren().get(0));
+            String name = interp.readOpNode(node.getChildren().get(0));
             //Checking if the name is the variable of array id
             if (name.charAt(name.length() - 1) == ')' && name.indexOf('(') != -1) {
                 index = name.substring(name.lastIndexOf('(') + 1, name.length() - 1);
@@ -99,21 +169,21 @@ public class TclInterpreter extends AbstractTclInterpreter {
             }
             if (node.getChildren().size() >= 2) {
                 //If at least two operands, set the variable or array element
-                value = readOpNode(node.getChildren().get(1));
+                value = interp.readOpNode(node.getChildren().get(1));
                 if (index == null) {
-                    context.setVaribale(name, value);
-                    output.append(" ").append(name).append("=").append(value).append(";\n");
+                    interp.context.setVaribale(name, value);
+                    interp.trace(TclTraceEvent.Kind.SET, name, value);
                 } else {
-                    context.setArrayElement(name, index, value);
-                    output.append(" ").append(name).append("(").append(index).append(")=").append(value).append(";\n");
+                    interp.context.setArrayElement(name, index, value);
+                    interp.trace(TclTraceEvent.Kind.SET, name, index, value);
                 }
             } else //If only one operand, read and return the variable or array element
              if (index == null) {
-                    value = context.getVaribale(name);
-                    output.append(" ").append(name).append("=").append(value).append(";\n");
+                    value = interp.context.getVaribale(name);
+                    interp.trace(TclTraceEvent.Kind.SET, name, value);
                 } else {
-                    value = context.getArrayElement(name, index);
-                    output.append(" ").append(name).append("(").append(index).append(")=").append(value).append(";\n");
+                    value = interp.context.getArrayElement(name, index);
+                    interp.trace(TclTraceEvent.Kind.SET, name, index, value);
                 }
             list.add(value);
             return list;
@@ -122,9 +192,9 @@ public class TclInterpreter extends AbstractTclInterpreter {
         /*
          'Unset' command definition
          */
-        COMMANDS.put("unset", new GenericTclCommand("unset", 1, (TclCommand<TclNode, TclList>) (TclNode node) -> {
+        builtins.put("unset", new TclBuiltinCommand("unset", 1, (TclInterpreter interp, TclNode node) -> {
             String index = null;
-            String name = readOpNode(node.getChildren().get(0));
+            String name = interp.readOpNode(node.getChildren().get(0));
             TclList list = new TclList();
             //Checking if the name is the variable of array id
             if (name.charAt(name.length() - 1) == ')' && name.indexOf('(') != -1) {
@@ -133,13 +203,13 @@ public class TclInterpreter extends AbstractTclInterpreter {
             }
             //Checking if a variable of an array element needs to removed
             if (index == null) {
-                context.deleteVaribale(name);
-                output.append(" ").append(name).append("=").append("undefined;");
-                list.add(context.getVaribale(name));
+                interp.context.deleteVaribale(name);
+                interp.trace(TclTraceEvent.Kind.UNSET, name, null);
+                list.add(interp.context.getVaribale(name));
             } else {
-                context.deleteArrayElement(name, index);
-                output.append(" ").append(name).append("(").append(index).append(")=").append("undefined;");
-                list.add(context.getArrayElement(name, index));
+                interp.context.deleteArrayElement(name, index);
+                interp.trace(TclTraceEvent.Kind.UNSET, name, index, null);
+                list.add(interp.context.getArrayElement(name, index));
             }
             return list;
         }));
@@ -147,25 +217,41 @@ public class TclInterpreter extends AbstractTclInterpreter {
         /*
          'Puts' command definition
          */
-        COMMANDS.put("puts", new GenericTclCommand("puts", 1, (TclCommand<TclNode, TclList>) (TclNode node) -> {
-            String value = readOpNode(node.getChildren().get(0));
-            out.append("Tcl> ")
-                    .append(value)
-                    .append("\n");
-            output.append(" output: ").append(value).append(";\n");
+        builtins.put("puts", new TclBuiltinCommand("puts", 1, (TclInterpreter interp, TclNode node) -> {
+            String value = interp.readOpNode(node.getChildren().get(0));
+            try {
+                interp.out.append("Tcl> ")
+                        .append(value)
+                        .append("\n");
+            } catch (IOException ex) {
+                throw new TclExecutionException("Cannot write the output: " + ex.getMessage(), node);
+            }
+            interp.trace(TclTraceEvent.Kind.OUTPUT, null, value);
             TclList list = new TclList();
             list.add(value);
             return list;
         }));
 
+        /*
+         'flush' command definition - writing the buffered output
+         */
+        builtins.put("flush", new TclBuiltinCommand("flush", 0, (TclInterpreter interp, TclNode node) -> {
+            try {
+                interp.out.flush();
+            } catch (IOException ex) {
+                throw new TclExecutionException("Cannot write the output: " + ex.getMessage(), node);
+            }
+            return new TclList();
+        }));
+
         /*
          'Expr' command definition
          */
-        COMMANDS.put("expr", new GenericTclCommand("expr", 1, (TclCommand<TclNode, TclList>) (TclNode node) -> {
+        builtins.put("expr", new TclBuiltinCommand("expr", 1, (TclInterpreter interp, TclNode node) -> {
             //The second round of substitutions
-            String result = evaluateExpression(readOpNode(node.getChildren().get(0)), node);
-            //Creating output
-            output.append(" expression=").append(result).append(";\n");
+            String result = interp.evaluateExpression(interp.readOpNode(node.getChildren().get(0)), node);
+            //Tracing the result
+            interp.trace(TclTraceEvent.Kind.EXPRESSION, null, result);
             TclList list = new TclList();
             list.add(result);
             return list;
@@ -173,45 +259,51 @@ public class TclInterpreter extends AbstractTclInterpreter {
         /*
          'if' command definition
          */
-        COMMANDS.put("if", new GenericTclCommand("if", 2, (TclCommand<TclNode, TclList>) (TclNode node) -> {
+        builtins.put("if", new TclBuiltinCommand("if", 2, (TclInterpreter interp, TclNode node) -> {
             TclList result = null;
             String intresult;
             //Creating an iterator over the list of arguments
             Iterator<TclNode> iter = node.getChildren().iterator();
-            String expression = evaluateExpression(readOpNode(iter.next()), node);
+            String expression = interp.evaluateExpression(interp.readOpNode(iter.next()), node);
             //Iterating until an exception is thrown
             try {
                 while (true) {
-                    intresult = readOpNode(iter.next());
+                    intresult = interp.readOpNode(iter.next());
                     //If the next argument is equel to 'then', then go to the next argument
                     if (intresult.toLowerCase().equals("then")) {
-                        intresult = readOpNode(iter.next());
+                        intresult = interp.readOpNode(iter.next());
                     }
                     //If the condition is true return the first expression
                     //In other case read and return the last expression or if 'elseif' go to the next iteration
-                    if (readBooleanString(expression) == 1) {
+                    if (interp.readBooleanString(expression) == 1) {
                         //Parsing and interprerting the first body
-                        result = evaluateScript(intresult);
-                        output.append(" if=then: ").append(result).append(";\n");
+                        result = interp.evaluateScript(intresult);
+                        if (interp.tracer != null) {
+                            interp.trace(TclTraceEvent.Kind.RESULT, "if", listToString(result));
+                        }
                         return result;
                     } else {
-                        intresult = readOpNode(iter.next());
+                        intresult = interp.readOpNode(iter.next());
                         switch (intresult.toLowerCase()) {
                             case "elseif":
-                                expression = evaluateExpression(readOpNode(iter.next()), node);
+                                expression = interp.evaluateExpression(interp.readOpNode(iter.next()), node);
                                 break;
                             case "else":
                                 //Reading, parsing and interprerting the second body
-                                intresult = readOpNode(iter.next());
-                                result = evaluateScript(intresult);
+                                intresult = interp.readOpNode(iter.next());
+                                result = interp.evaluateScript(intresult);
                             default:
-                                output.append(" if=else: ").append(result).append(";\n");
+                                if (interp.tracer != null) {
+                                    interp.trace(TclTraceEvent.Kind.RESULT, "if", listToString(result));
+                                }
                                 return result;
                         }
                     }
                 }
             } catch (NoSuchElementException ex) {
-                output.append(" if=").append(result).append(";\n");
+                if (interp.tracer != null) {
+                    interp.trace(TclTraceEvent.Kind.RESULT, "if", listToString(result));
+                }
                 return result;
             }
         }));
@@ -219,109 +311,219 @@ public class TclInterpreter extends AbstractTclInterpreter {
         /*
          'for' command definition
          */
-        COMMANDS.put("for", new GenericTclCommand("for", 4, (TclCommand<TclNode, TclList>) (TclNode node) -> {
+        builtins.put("for", new TclBuiltinCommand("for", 4, (TclInterpreter interp, TclNode node) -> {
             //Reading, parsing and interprerting the first expression
-            evaluateScript(readOpNode(node.getChildren().get(0)));
+            interp.evaluateScript(interp.readOpNode(node.getChildren().get(0)));
             //Reading the condition string
-            String conString = readOpNode(node.getChildren().get(1));
+            String conString = interp.readOpNode(node.getChildren().get(1));
             //Reading the final expression string
-            String finalString = readOpNode(node.getChildren().get(2));
+            String finalString = interp.readOpNode(node.getChildren().get(2));
             //Reading the cycle body string
-            String action = readOpNode(node.getChildren().get(3));
+            String action = interp.readOpNode(node.getChildren().get(3));
             //Result
             TclList result = null;
             //The first evaluation of the conditional expression
-            String condition = evaluateExpression(conString, node);
+            String condition = interp.evaluateExpression(conString, node);
             //The main cycle
-            while (readBooleanString(condition) == 1) {
+            while (interp.readBooleanString(condition) == 1) {
                 //Evaluating the body of the cycle
-                result = evaluateScript(action);
+                try {
+                    result = interp.evaluateScript(action);
+                } catch (TclCompletion ex) {
+                    if (ex.getCode() == TclCompletionCode.BREAK) {
+                        break;
+                    } else if (ex.getCode() != TclCompletionCode.CONTINUE) {
+                        throw ex;
+                    }
+                }
                 //Evaluating the final expression of the cycle
-                evaluateScript(finalString);
+                interp.evaluateScript(finalString);
                 //Evaluating the conditional expression
-                condition = evaluateExpression(conString, node);
+                condition = interp.evaluateExpression(conString, node);
+            }
+            //Tracing the result of the last body evaluation
+            if (interp.tracer != null) {
+                interp.trace(TclTraceEvent.Kind.RESULT, "for", listToString(result));
             }
-            //Writing the body evaluation condition as the output
-            output.append(" 'for' expression=").append(result).append(";\n");
             return result;
         }));
 
         /*
          'while' cycle command definition
          */
-        COMMANDS.put("while", new GenericTclCommand("while", 2, (TclCommand<TclNode, TclList>) (TclNode node) -> {
+        builtins.put("while", new TclBuiltinCommand("while", 2, (TclInterpreter interp, TclNode node) -> {
             //Reading the conditional string and the cycle body
-            String conString = readOpNode(node.getChildren().get(0));
-            String action = readOpNode(node.getChildren().get(1));
+            String conString = interp.readOpNode(node.getChildren().get(0));
+            String action = interp.readOpNode(node.getChildren().get(1));
             //Result
             TclList result = null;
             //The first evaluation of the conditional expression
-            String condition = evaluateExpression(conString, node);
+            String condition = interp.evaluateExpression(conString, node);
             //The main cycle
-            while (readBooleanString(condition) == 1) {
+            while (interp.readBooleanString(condition) == 1) {
                 //Parsing and interprerting the cycle body
-                result = evaluateScript(action);
+                try {
+                    result = interp.evaluateScript(action);
+                } catch (TclCompletion ex) {
+                    if (ex.getCode() == TclCompletionCode.BREAK) {
+                        break;
+                    } else if (ex.getCode() != TclCompletionCode.CONTINUE) {
+                        throw ex;
+                    }
+                }
                 //Evaluating the first operand as a conditional expression
-                condition = evaluateExpression(conString, node);
+                condition = interp.evaluateExpression(conString, node);
+            }
+            //Tracing the result of the last body evaluation
+            if (interp.tracer != null) {
+                interp.trace(TclTraceEvent.Kind.RESULT, "while", listToString(result));
             }
-            //Writing the body evaluation condition as the output
-            output.append(" 'while' expression=").append(result).append(";\n");
             return result;
         }));
 
+        /*
+         'break' command definition
+         */
+        builtins.put("break", new TclBuiltinCommand("break", 0, (TclInterpreter interp, TclNode node) -> {
+            throw TclCompletion.BREAK;
+        }));
+
+        /*
+         'continue' command definition
+         */
+        builtins.put("continue", new TclBuiltinCommand("continue", 0, (TclInterpreter interp, TclNode node) -> {
+            throw TclCompletion.CONTINUE;
+        }));
+
+        /*
+         'return' command definition - completing the script with an optional value
+         */
+        builtins.put("return", new TclBuiltinCommand("return", 0, (TclInterpreter interp, TclNode node) -> {
+            List<TclNode> args = node.getChildren();
+            TclCompletionCode code = TclCompletionCode.RETURN;
+            int i = 0;
+            //Reading the '-code' option
+            if (args.size() > 1 && interp.readOpNode(args.get(0)).equals("-code")) {
+                code = readCompletionCode(interp.readOpNode(args.get(1)), node);
+                i = 2;
+            }
+            String value = i < args.size() ? interp.readOpNode(args.get(i)) : "";
+            switch (code) {
+                case OK:
+                case RETURN:
+                    TclList list = new TclList();
+                    if (i < args.size()) {
+                        list.add(value);
+                    }
+                    throw new TclCompletion(TclCompletionCode.RETURN, list);
+                case ERROR:
+                    throw new TclExecutionException(value, node);
+                case BREAK:
+                    throw TclCompletion.BREAK;
+                default:
+                    throw TclCompletion.CONTINUE;
+            }
+        }));
+
+        /*
+         'error' command definition - raising an error with an optional initial error information and error code
+         */
+        builtins.put("error", new TclBuiltinCommand("error", 1, (TclInterpreter interp, TclNode node) -> {
+            List<TclNode> args = node.getChildren();
+            TclExecutionException error = new TclExecutionException(interp.readOpNode(args.get(0)), node);
+            if (args.size() > 1) {
+                String info = interp.readOpNode(args.get(1));
+                error.setErrorInfo(info.isEmpty() ? null : info);
+            }
+            if (args.size() > 2) {
+                error.setErrorCode(interp.readOpNode(args.get(2)));
+            }
+            throw error;
+        }));
+
+        /*
+         'catch' command definition - evaluating a script and returning its completion code
+         */
+        builtins.put("catch", new TclBuiltinCommand("catch", 1, (TclInterpreter interp, TclNode node) -> {
+            List<TclNode> args = node.getChildren();
+            String script = interp.readOpNode(args.get(0));
+            TclCompletionCode code = TclCompletionCode.OK;
+            String result;
+            try {
+                result = listToString(interp.evaluateScript(script));
+            } catch (TclCompletion ex) {
+                code = ex.getCode();
+                result = ex.getValue() == null ? "" : listToString(ex.getValue());
+            } catch (TclExecutionException ex) {
+                code = TclCompletionCode.ERROR;
+                result = ex.getMessage();
+                //The error information is only created if the variable is read
+                interp.context.setValue("errorInfo", TclValue.lazy(ex::getErrorInfo));
+                interp.context.setValue("errorCode", TclValue.of(ex.getErrorCode()));
+            }
+            if (args.size() > 1) {
+                String name = interp.readOpNode(args.get(1));
+                interp.context.setVaribale(name, result);
+                interp.trace(TclTraceEvent.Kind.SET, name, result);
+            }
+            TclList list = new TclList();
+            list.add(Integer.toString(code.ordinal()));
+            return list;
+        }));
+
         /*
          'string' command definition
          */
-        COMMANDS.put("string", new GenericTclCommand("string", 2, (TclCommand<TclNode, TclList>) (TclNode node) -> {
+        builtins.put("string", new TclBuiltinCommand("string", 2, (TclInterpreter interp, TclNode node) -> {
             //Variable for the result
             String result = null;
             int i = 0, k;
             //Executingg different subcommands
             try {
-                switch (readOpNode(node.getChildren().get(0))) {
+                switch (interp.readOpNode(node.getChildren().get(0))) {
                     case "length":
                         //String length
-                        result = Integer.toString(readOpNode(node.getChildren().get(1)).length());
+                        result = Integer.toString(interp.readOpNode(node.getChildren().get(1)).length());
                         break;
                     case "index":
                         //The char at index position
                         try {
-                            result = "" + readOpNode(node.getChildren().get(1))
-                                    .charAt(Integer.parseInt(readOpNode(node.getChildren().get(2))));
+                            result = "" + interp.readOpNode(node.getChildren().get(1))
+                                    .charAt(Integer.parseInt(interp.readOpNode(node.getChildren().get(2))));
                         } catch (NumberFormatException ex) {
                             throw new TclExecutionException("The index of a string must be an integer number!", node);
                         }
                         break;
                     case "range":
                         //Returng a substring
-                        result = readOpNode(node.getChildren().get(1))
-                                .substring(Integer.parseInt(readOpNode(node.getChildren().get(2))),
-                                        Integer.parseInt(readOpNode(node.getChildren().get(3))));
+                        result = interp.readOpNode(node.getChildren().get(1))
+                                .substring(Integer.parseInt(interp.readOpNode(node.getChildren().get(2))),
+                                        Integer.parseInt(interp.readOpNode(node.getChildren().get(3))));
                         break;
                     case "compare":
                         //Comparing two strings
-                        result = Integer.toString(readOpNode(node.getChildren().get(1))
-                                .compareTo(readOpNode(node.getChildren().get(2))));
+                        result = Integer.toString(interp.readOpNode(node.getChildren().get(1))
+                                .compareTo(interp.readOpNode(node.getChildren().get(2))));
                         break;
                     case "match":
                         //Matching two strings
-                        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + readOpNode(node.getChildren().get(1)));
-                        result = Integer.toString(matcher.matches(Paths.get(readOpNode(node.getChildren().get(2)))) ? 1 : 0);
+                        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + interp.readOpNode(node.getChildren().get(1)));
+                        result = Integer.toString(matcher.matches(Paths.get(interp.readOpNode(node.getChildren().get(2)))) ? 1 : 0);
                         break;
                     case "first":
                         //Index of the first character of a substring
-                        result = Integer.toString(readOpNode(node.getChildren().get(2)).indexOf(readOpNode(node.getChildren().get(1))));
+                        result = Integer.toString(interp.readOpNode(node.getChildren().get(2)).indexOf(interp.readOpNode(node.getChildren().get(1))));
                         break;
                     case "last":
                         //Index of the last character of a substring
-                        result = Integer.toString(readOpNode(node.getChildren().get(2)).lastIndexOf(readOpNode(node.getChildren().get(1))));
+                        result = Integer.toString(interp.readOpNode(node.getChildren().get(2)).lastIndexOf(interp.readOpNode(node.getChildren().get(1))));
                         break;
                     case "wordstart":
                         //The index of the first character of the word contating the index character
-                        result = readOpNode(node.getChildren().get(1));
+                        result = interp.readOpNode(node.getChildren().get(1));
                         //Reading the character's index
                         try {
-                            i = Integer.parseInt(readOpNode(node.getChildren().get(2)));
+                            i = Integer.parseInt(interp.readOpNode(node.getChildren().get(2)));
                         } catch (NumberFormatException ex) {
                             throw new TclExecutionException("The index of a string must be an integer number!", node);
                         }
@@ -336,10 +538,10 @@ public class TclInterpreter extends AbstractTclInterpreter {
                         break;
                     case "wordend":
                         //The index of the last+1 character of the word contating the index character
-                        result = readOpNode(node.getChildren().get(1));
+                        result = interp.readOpNode(node.getChildren().get(1));
                         //Reading the character's index
                         try {
-                            i = Integer.parseInt(readOpNode(node.getChildren().get(2)));
+                            i = Integer.parseInt(interp.readOpNode(node.getChildren().get(2)));
                         } catch (NumberFormatException ex) {
                             throw new TclExecutionException("The index of a string must be an integer number!", node);
                         }
@@ -354,23 +556,23 @@ public class TclInterpreter extends AbstractTclInterpreter {
                         break;
                     case "tolower":
                         //Converting to lower case
-                        result = readOpNode(node.getChildren().get(1)).toLowerCase();
+                        result = interp.readOpNode(node.getChildren().get(1)).toLowerCase();
                         break;
                     case "toupper":
                         //Converting to upper case
-                        result = readOpNode(node.getChildren().get(1)).toUpperCase();
+                        result = interp.readOpNode(node.getChildren().get(1)).toUpperCase();
                         break;
                     case "trimleft":
                         //Trimming chars from the left
-                        result = trimString(node, -1);
+                        result = interp.trimString(node, -1);
                         break;
                     case "trimright":
                         //Trimming chars from the right
-                        result = trimString(node, 1);
+                        result = interp.trimString(node, 1);
                         break;
                     case "trim":
                         //Trimming chars from the left
-                        result = trimString(node, 0);
+                        result = interp.trimString(node, 0);
                         break;
                     default:
                         throw new TclExecutionException("Unknown string subcommand!", node);
@@ -378,7 +580,7 @@ public class TclInterpreter extends AbstractTclInterpreter {
             } catch (NumberFormatException ex) {
                 throw new TclExecutionException("String indexes must be integer numbers!", node);
             }
-            output.append(" string=").append(result).append(";\n");
+            interp.trace(TclTraceEvent.Kind.RESULT, "string", result);
             TclList list = new TclList();
             list.add(result);
             return list;
@@ -387,25 +589,25 @@ public class TclInterpreter extends AbstractTclInterpreter {
         /*
          'format' command definition - formatted output to a string
          */
-        COMMANDS.put("format", new GenericTclCommand("format", 2, (TclCommand<TclNode, TclList>) (TclNode node) -> {
+        builtins.put("format", new TclBuiltinCommand("format", 2, (TclInterpreter interp, TclNode node) -> {
             //Variable for the result
             String result = null;
             int i;
             //Format string
-            String fString = readOpNode(node.getChildren().get(0));
+            String fString = interp.readOpNode(node.getChildren().get(0));
             String fmStr;
             Object[] args = new Object[node.getChildren().size() - 1];
             List<String> fmts = null;
             //Extracting formatters
             try {
-                fmts = getStringFormatters(fString);
+                fmts = interp.getStringFormatters(fString);
             } catch (IllegalFormatException ex) {
                 throw new TclExecutionException("Illegal format string! - " + ex.getMessage(), node);
             }
             //Extracting values to print
             try {
                 for (i = 1; i < node.getChildren().size(); i++) {
-                    fmStr = readOpNode(node.getChildren().get(i));
+                    fmStr = interp.readOpNode(node.getChildren().get(i));
                     //Converting arguments according to extracted format strings
                     switch (fmts.get(i - 1).charAt(fmts.get(i - 1).length() - 1)) {
                         case 's':
@@ -444,7 +646,7 @@ public class TclInterpreter extends AbstractTclInterpreter {
             } catch (MissingFormatArgumentException ex) {
                 throw new TclExecutionException("The number of formatters exceed the number of arguments!", node);
             }
-            output.append(" formatted string=").append(result).append(";\n");
+            interp.trace(TclTraceEvent.Kind.RESULT, "format", result);
             TclList list = new TclList();
             list.add(result);
             return list;
@@ -452,55 +654,58 @@ public class TclInterpreter extends AbstractTclInterpreter {
         /*
         'list' command - creating a Tcl list
          */
-        COMMANDS.put("list", new GenericTclCommand("list", 1, (TclCommand<TclNode, TclList>) (TclNode node) -> {
+        builtins.put("list", new TclBuiltinCommand("list", 1, (TclInterpreter interp, TclNode node) -> {
             TclList list = new TclList();
             //Adding all 'list' command arguments to the list
             for (TclNode arg : node.getChildren()) {
-                list.add(readOpNode(arg));
+                list.add(interp.readOpNode(arg));
+            }
+            if (interp.tracer != null) {
+                interp.trace(TclTraceEvent.Kind.RESULT, "list", list.toString());
             }
-            output.append("List: ").append(list).append(";\n");
             return list;
         }));
 
         /*
         'lindex' command - an element of the list at 'index' position
          */
-        COMMANDS.put("lindex", new GenericTclCommand("lindex", 2, (TclCommand<TclNode, TclList>) (TclNode node) -> {
+        builtins.put("lindex", new TclBuiltinCommand("lindex", 2, (TclInterpreter interp, TclNode node) -> {
             //List's name
-            String name = readOpNode(node.getChildren().get(0));
+            String name = interp.readOpNode(node.getChildren().get(0));
             //List's content
-            List<String> list = context.getList(name);
+            List<String> list = interp.readList(name);
             String result = null;
             if (list != null) {
                 try {
-                    result = list.get(Integer.parseInt(readOpNode(node.getChildren().get(1))));
+                    result = list.get(Integer.parseInt(interp.readOpNode(node.getChildren().get(1))));
                 } catch (NumberFormatException ex) {
                     throw new TclExecutionException("The index of a list element must be an integer number!", node);
                 }
             }
             TclList tlist = new TclList();
             tlist.add(result);
-            output.append("Element of the '").append(name).append("' list = ").append(result).append(";\n");
+            interp.trace(TclTraceEvent.Kind.RESULT, "lindex", result);
             return tlist;
         }));
 
         /*
         'llength' command - the lenght of a list
          */
-        COMMANDS.put("llength", new GenericTclCommand("llength", 1, (TclCommand<TclNode, TclList>) (TclNode node) -> {
+        builtins.put("llength", new TclBuiltinCommand("llength", 1, (TclInterpreter interp, TclNode node) -> {
             //List's name
-            String name = readOpNode(node.getChildren().get(0));
+            String name = interp.readOpNode(node.getChildren().get(0));
             //List's content
-            List<String> list = context.getList(name);
+            List<String> list = interp.readList(name);
             String result = null;
             if (list != null) {
                 result = Integer.toString(list.size());
             }
             TclList tlist = new TclList();
             tlist.add(result);
-            output.append("The lenght of the '").append(name).append("' list = ").append(result).append(";\n");
+            interp.trace(TclTraceEvent.Kind.RESULT, "llength", result);
             return tlist;
         }));
+        BUILTINS = Collections.unmodifiableMap(builtins);
     }
 
     /**
@@ -511,12 +716,114 @@ public class TclInterpreter extends AbstractTclInterpreter {
      * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
      */
     protected TclList executeCommand(TclNode command) throws TclExecutionException {
-        //Calling the Tcl command or throwing an error if it is not defined
-        TclCommand cmd = COMMANDS.get(command.getValue());
-        if (cmd == null) {
-            throw new TclExecutionException("The command " + command.getValue() + " is not defined!", command);
+        traceCommand(command);
+        try {
+            //Calling the Tcl command or throwing an error if it is not defined
+            if (!COMMANDS.isEmpty()) {
+                TclCommand<TclNode, TclList> cmd = COMMANDS.get(command.getValue());
+                if (cmd != null) {
+                    return traceResult(command, cmd.apply(command));
+                }
+            }
+            TclBuiltinCommand builtin = BUILTINS.get(command.getValue());
+            if (builtin == null) {
+                throw new TclExecutionException("The command " + command.getValue() + " is not defined!", command);
+            }
+            return builtin.apply(this, command);
+        } catch (TclExecutionException ex) {
+            //Collecting the commands for the error information
+            throw ex.addFrame(command);
         }
-        return COMMANDS.get(command.getValue()).apply(command);
+    }
+
+    /**
+     * Executing a Tcl command at a site of compiled code, which caches the
+     * resolved command
+     *
+     * @param site
+     * @return the result of a command
+     * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
+     */
+    protected TclList executeCommand(TclCommandSite site) throws TclExecutionException {
+        TclCommand<TclNode, TclList> command = site.resolve(COMMANDS);
+        traceCommand(site.command);
+        try {
+            if (command != null) {
+                return traceResult(site.command, command.apply(site.command));
+            }
+            if (site.builtin == null) {
+                throw new TclExecutionException("The command " + site.command.getValue() + " is not defined!", site.command);
+            }
+            return site.builtin.apply(this, site.command);
+        } catch (TclExecutionException ex) {
+            //Collecting the commands for the error information
+            throw ex.addFrame(site.command);
+        }
+    }
+
+    /**
+     * Tracing the invocation of a command with the digest of its arguments.
+     * Built-in commands trace their own results.
+     *
+     * @param command
+     */
+    protected void traceCommand(TclNode command) {
+        if (tracer != null) {
+            trace(TclTraceEvent.Kind.COMMAND, command.getValue(), digest(command));
+        }
+    }
+
+    /**
+     * Tracing the result of a command defined by the user
+     *
+     * @param command
+     * @param result
+     * @return the result
+     */
+    protected TclList traceResult(TclNode command, TclList result) {
+        if (tracer != null) {
+            trace(TclTraceEvent.Kind.RESULT, command.getValue(), listToString(result));
+        }
+        return result;
+    }
+
+    /**
+     * Creating a short digest of the arguments of a command from their
+     * unsubstituted text
+     *
+     * @param command
+     * @return
+     */
+    protected static String digest(TclNode command) {
+        StringBuilder str = new StringBuilder();
+        for (TclNode operand : command.getChildren()) {
+            if (str.length() >= DIGEST_LENGTH) {
+                break;
+            }
+            if (str.length() > 0) {
+                str.append(' ');
+            }
+            for (TclNode child : operand.getChildren()) {
+                switch (child.type) {
+                    case NAME:
+                        str.append('$').append(child.getValue());
+                        break;
+                    case PROGRAM:
+                        str.append('[').append(child.getValue()).append(']');
+                        break;
+                    default:
+                        if (child.getValue() != null) {
+                            str.append(child.getValue());
+                        }
+                        break;
+                }
+            }
+        }
+        if (str.length() > DIGEST_LENGTH) {
+            str.setLength(DIGEST_LENGTH);
+            str.append("...");
+        }
+        return str.toString();
     }
 
     /**
@@ -524,8 +831,9 @@ public class TclInterpreter extends AbstractTclInterpreter {
      *
      * @param node
      * @return
+     * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
      */
-    protected String readOpNode(TclNode node) {
+    protected String readOpNode(TclNode node) throws TclExecutionException {
         StringBuilder str = new StringBuilder("");
         for (TclNode child : node.getChildren()) {
             switch (child.type) {
@@ -570,6 +878,22 @@ public class TclInterpreter extends AbstractTclInterpreter {
         }
     }
 
+    /**
+     * Reading a list or, if there is no list with this name, the list form of
+     * a variable
+     *
+     * @param name
+     * @return the list or null if neither exists
+     */
+    protected List<String> readList(String name) {
+        List<String> list = context.getList(name);
+        if (list == null) {
+            TclValue value = context.getValue(name);
+            list = value == null ? null : value.getList();
+        }
+        return list;
+    }
+
     /**
      * Interpreting a string as a boolean value
      *
@@ -577,25 +901,7 @@ public class TclInterpreter extends AbstractTclInterpreter {
      * @return
      */
     protected Long readBooleanString(String str) {
-        try {
-            double nres = Double.parseDouble(str);
-            if (nres == 0) {
-                return 0l;
-            } else {
-                return 1l;
-            }
-        } catch (NumberFormatException ex) {
-            switch (str.toLowerCase()) {
-                case "yes":
-                case "true":
-                    return 1l;
-                case "no":
-                case "false":
-                    return 0l;
-                default:
-                    return null;
-            }
-        }
+        return TclNumberScanner.scanBoolean(str);
     }
 
     /**
@@ -607,45 +913,117 @@ public class TclInterpreter extends AbstractTclInterpreter {
      * @throws TclExecutionException
      */
     protected String evaluateExpression(String expr, TclNode node) throws TclExecutionException {
-        TclNode exprNode;
-        String result;
-        //First submit the expression ot a TclStringParser for substitution
+        TclByteCode code;
+        //Getting the compiled expression, variables and commands are substituted during evaluation
         try {
-            exprNode = new TclStringParser(new TclStringLexer(expr)).parse();
+            code = EXPRESSIONCACHE.get(expr, TclInterpreter::compileExpression);
         } catch (AbstractTclParser.TclParserError ex) {
             throw new AbstractTclInterpreter.TclExecutionException("Syntax error in Tcl expression!", node);
         }
         //Interpreting the expression
-        TclExpressionInterpreter inter = new TclExpressionInterpreter(
-                new TclExpressionParser(new TclExpressionLexer(readOpNode(exprNode))));
-        try {
-            result = inter.run();
-        } catch (AbstractTclParser.TclParserError ex) {
-            throw new AbstractTclInterpreter.TclExecutionException("Syntax error in Tcl expression!", node);
-        }
-        return result;
+        return getVirtualMachine().evaluate(code);
+    }
+
+    /**
+     * Parsing a Tcl expression
+     *
+     * @param expr
+     * @return
+     * @throws tclinterpreter.AbstractTclParser.TclParserError
+     */
+    protected static TclNode parseExpression(String expr) throws AbstractTclParser.TclParserError {
+        return new TclExpressionParser(new TclExpressionLexer(expr)).parse();
     }
 
     /**
-     * Evaluating a Tcl script
+     * Parsing and compiling a Tcl expression
+     *
+     * @param expr
+     * @return
+     * @throws tclinterpreter.AbstractTclParser.TclParserError
+     */
+    protected static TclByteCode compileExpression(String expr) throws AbstractTclParser.TclParserError {
+        return TclCompiler.compileExpression(parseExpression(expr));
+    }
+
+    /**
+     * Evaluating a Tcl script. Errors and the completions by 'break',
+     * 'continue' and 'return' are passed to the caller.
      *
      * @param script
      * @return
+     * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
      */
-    protected TclList evaluateScript(String script) {
-        //Creating a new instance of Tcl interpreter with the same context
-        AbstractTclInterpreter subinterpreter
-                = new TclInterpreter(new TclParser(new TclLexer(script)), context, false);
-        //Evaluating the script and catch errors that appear
+    protected TclList evaluateScript(String script) throws TclExecutionException {
+        TclByteCode code;
+        trace(TclTraceEvent.Kind.ENTER, script, null);
         try {
-            subinterpreter.run();
+            code = CODECACHE.get(script, TclInterpreter::compileScript);
         } catch (AbstractTclParser.TclParserError ex) {
-            Logger.getLogger(TclInterpreter.class.getName()).log(Level.SEVERE, null, ex);
-        } catch (AbstractTclInterpreter.TclExecutionException ex) {
-            Logger.getLogger(TclInterpreter.class.getName()).log(Level.SEVERE, null, ex);
+            throw new TclExecutionException("Syntax error in Tcl script: " + ex, null);
+        }
+        //Executing the cached compiled script with the same context
+        try {
+            return getVirtualMachine().execute(code);
+        } finally {
+            trace(TclTraceEvent.Kind.LEAVE, script, null);
+        }
+    }
+
+    /**
+     * Reading a completion code given by its name or number
+     *
+     * @param str
+     * @param node
+     * @return
+     * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
+     */
+    protected static TclCompletionCode readCompletionCode(String str, TclNode node) throws TclExecutionException {
+        for (TclCompletionCode code : TclCompletionCode.values()) {
+            if (str.equals(code.toString()) || str.equals(Integer.toString(code.ordinal()))) {
+                return code;
+            }
+        }
+        throw new TclExecutionException("Bad completion code '" + str + "'!", node);
+    }
+
+    /**
+     * Completing a script by a completion, which has reached its top level
+     *
+     * @param completion
+     * @return the returned value
+     * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException if
+     * 'break' or 'continue' is invoked outside of a loop
+     */
+    protected TclList complete(TclCompletion completion) throws TclExecutionException {
+        if (completion.getCode() != TclCompletionCode.RETURN) {
+            throw recordEvents(new TclExecutionException("Invoked \"" + completion.getCode()
+                    + "\" outside of a loop!", null));
         }
-        output.append("[").append(subinterpreter.getOutput()).append("]\n");
-        return subinterpreter.getRlist();
+        return completion.getValue();
+    }
+
+    /**
+     * Returning the string form of a command result the same way as
+     * substitutions create it
+     *
+     * @param list
+     * @return
+     */
+    protected static String listToString(TclList list) {
+        return String.valueOf(list == null ? null : list.toString());
+    }
+
+    /**
+     * Returning the virtual machine for compiled code
+     *
+     * @return
+     */
+    public TclVirtualMachine getVirtualMachine() {
+        if (vm == null) {
+            vm = new TclVirtualMachine(this);
+        }
+        return vm;
     }
 
     /**
@@ -674,10 +1052,130 @@ public class TclInterpreter extends AbstractTclInterpreter {
      */
     @Override
     public String run() throws TclParser.TclParserError, TclExecutionException {
-        TclNode root = parser.parse();
-        output.append("Executing ").append(root.getValue()).append(":\n");
-        rlist = executeProgram(root);
-        return rlist.toString();
+        if (streaming && parser instanceof TclParser) {
+            return runStreaming((TclParser) parser);
+        }
+        return run(parser.parse());
+    }
+
+    /**
+     * Running an already parsed program, for example one loaded from a
+     * TclDiskCache
+     *
+     * @param root the program node
+     * @return
+     * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
+     */
+    public String run(TclNode root) throws TclExecutionException {
+        trace(TclTraceEvent.Kind.RUN, root.getValue(), null);
+        try {
+            rlist = getVirtualMachine().execute(TclCompiler.compileProgram(root));
+        } catch (TclCompletion ex) {
+            rlist = complete(ex);
+        } catch (TclExecutionException ex) {
+            throw recordEvents(ex);
+        } finally {
+            flushOutput();
+        }
+        return rlist == null ? null : rlist.toString();
+    }
+
+    /**
+     * Running a program encoded as a flat tree. Only the command being
+     * executed is expanded into TclNode objects.
+     *
+     * @param program
+     * @return
+     * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
+     */
+    public String run(TclFlatTree program) throws TclExecutionException {
+        TclList res;
+        trace(TclTraceEvent.Kind.RUN, program.getValue(0), null);
+        rlist = null;
+        try {
+            for (int k = 0; k < program.getChildCount(0); k++) {
+                res = executeCommand(program.toNode(program.getChild(0, k)));
+                rlist = (res == null || res.isEmpty()) ? rlist : res;
+            }
+        } catch (TclCompletion ex) {
+            rlist = complete(ex);
+        } catch (TclExecutionException ex) {
+            throw recordEvents(ex);
+        } finally {
+            flushOutput();
+        }
+        return rlist == null ? null : rlist.toString();
+    }
+
+    /**
+     * Running the script command by command. Each command is executed as soon
+     * as it is parsed and is not kept afterwards, so the memory used does not
+     * depend on the size of the script.
+     *
+     * @param parser
+     * @return
+     * @throws tclinterpreter.TclParser.TclParserError
+     * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
+     */
+    protected String runStreaming(TclParser parser) throws TclParser.TclParserError, TclExecutionException {
+        TclNode command;
+        TclList res;
+        trace(TclTraceEvent.Kind.RUN, "streamed script", null);
+        rlist = null;
+        try {
+            while ((command = parser.nextCommand()) != null) {
+                res = executeCommand(command);
+                rlist = (res == null || res.isEmpty()) ? rlist : res;
+            }
+        } catch (TclCompletion ex) {
+            rlist = complete(ex);
+        } catch (TclExecutionException ex) {
+            throw recordEvents(ex);
+        } finally {
+            flushOutput();
+        }
+        return rlist == null ? null : rlist.toString();
+    }
+
+    /**
+     * Is the script executed command by command as it is parsed?
+     *
+     * @return
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Setting whether the script should be executed command by command as it
+     * is parsed instead of being parsed and compiled as a whole
+     *
+     * @param streaming
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Parsing a Tcl script into a program node
+     *
+     * @param script
+     * @return
+     * @throws tclinterpreter.AbstractTclParser.TclParserError
+     */
+    protected static TclNode parseScript(String script) throws AbstractTclParser.TclParserError {
+        return new TclParser(new TclLexer(script)).parse();
+    }
+
+    /**
+     * Parsing and compiling a Tcl script
+     *
+     * @param script
+     * @return
+     * @throws tclinterpreter.AbstractTclParser.TclParserError
+     */
+    protected static TclByteCode compileScript(String script) throws AbstractTclParser.TclParserError {
+        return TclCompiler.compileProgram(SCRIPTCACHE.get(script, TclInterpreter::parseScript));
     }
 
     /**
@@ -701,8 +1199,9 @@ public class TclInterpreter extends AbstractTclInterpreter {
      * @param node
      * @param flag 1 - trim left, -1 - trim right and 0 - trim both
      * @return
+     * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
      */
-    protected String trimString(TclNode node, int flag) {
+    protected String trimString(TclNode node, int flag) throws TclExecutionException {
         String result = readOpNode(node.getChildren().get(1));
         String charset;
         int i = 0, k;
@@ -36,12 +36,12 @@ public class TclInterpreterContext {
     /**
      * Local variables associated with the context
      */
-    protected Map<String, String> variables;
+    protected Map<String, TclValue> variables;
 
     /**
      * Local arrays associated with the context
      */
-    protected Map<String, Map<String, String>> arrays;
+    protected Map<String, Map<String, TclValue>> arrays;
 
     /**
      * Local lists associated with the context
@@ -65,7 +65,7 @@ public class TclInterpreterContext {
      *
      * @return
      */
-    public Map<String, String> getVariables() {
+    public Map<String, TclValue> getVariables() {
         return variables;
     }
 
@@ -74,7 +74,7 @@ public class TclInterpreterContext {
      *
      * @return
      */
-    public Map<String, Map<String, String>> getArrays() {
+    public Map<String, Map<String, TclValue>> getArrays() {
         return arrays;
     }
     
@@ -103,6 +103,17 @@ public class TclInterpreterContext {
      * @return
      */
     public String getVaribale(String name) {
+        TclValue value = variables.get(name);
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * Getting the value object of a particular local variable
+     *
+     * @param name variable name
+     * @return
+     */
+    public TclValue getValue(String name) {
         return variables.get(name);
     }
     
@@ -124,7 +135,20 @@ public class TclInterpreterContext {
      * @return
      */
     public String getArrayElement(String name, String index) {
-        return arrays.get(name) == null ? null : arrays.get(name).get(index);
+        TclValue value = getArrayValue(name, index);
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * Getting the value object of an element of a particular local array
+     *
+     * @param name variable name
+     * @param index array index
+     * @return
+     */
+    public TclValue getArrayValue(String name, String index) {
+        Map<String, TclValue> array = arrays.get(name);
+        return array == null ? null : array.get(index);
     }
 
     /**
@@ -168,6 +192,16 @@ public class TclInterpreterContext {
      * @param value variable value
      */
     public void setVaribale(String name, String value) {
+        variables.put(name, TclValue.of(value));
+    }
+
+    /**
+     * Setting the value object of a particular local variable
+     *
+     * @param name variable name
+     * @param value variable value
+     */
+    public void setValue(String name, TclValue value) {
         variables.put(name, value);
     }
     
@@ -189,6 +223,17 @@ public class TclInterpreterContext {
      * @param value array element value
      */
     public void setArrayElement(String name, String index, String value) {
+        setArrayValue(name, index, TclValue.of(value));
+    }
+
+    /**
+     * Setting the value object of a particular element of a local array
+     *
+     * @param name array name
+     * @param index array index
+     * @param value array element value
+     */
+    public void setArrayValue(String name, String index, TclValue value) {
         //Creating the array if it does not exist
         if (arrays.get(name) == null) {
             arrays.put(name, new HashMap<>());
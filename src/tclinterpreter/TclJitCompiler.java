@@ -0,0 +1,811 @@
+/*
+ * Copyright (C) 2016 Ruslan Feshchenko
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tclinterpreter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import tclinterpreter.AbstractTclInterpreter.TclCompletion;
+import tclinterpreter.AbstractTclInterpreter.TclExecutionException;
+import tclinterpreter.TclExpressionInterpreter.OpResult;
+
+/**
+ * The second execution tier. Hot compiled code is translated into a graph of
+ * small specialized objects: operand stack manipulations are replaced by
+ * expression trees, operations with constant operands are folded and integer
+ * arithmetic gets fast paths, so that the JVM can inline the resulting calls.
+ * Translated code falls back to the virtual machine when one of its guards
+ * fails.
+ *
+ * @author Ruslan Feshchenko
+ * @version 0.1
+ */
+public class TclJitCompiler {
+
+    /**
+     * The maximal number of deoptimizations after which code is no longer
+     * promoted
+     */
+    public static final int MAX_DEOPTIMIZATIONS = 4;
+
+    /**
+     * A value returned by steps to leave the translated code
+     */
+    private static final int DEOPTIMIZE = -1;
+
+    /**
+     * Instructions by their codes
+     */
+    private static final TclOpCode[] OPCODES = TclOpCode.values();
+
+    /**
+     * The number of promoted, rejected and deoptimized compiled units
+     */
+    private static final AtomicLong PROMOTED = new AtomicLong(),
+            REJECTED = new AtomicLong(), DEOPTIMIZED = new AtomicLong();
+
+    /**
+     * Translating compiled code. Null is returned if the code can not be
+     * translated.
+     *
+     * @param bytecode
+     * @return
+     */
+    public static CompiledCode compile(TclByteCode bytecode) {
+        CompiledCode compiled = new TclJitCompiler(bytecode).translate();
+        if (compiled == null) {
+            REJECTED.incrementAndGet();
+        } else {
+            PROMOTED.incrementAndGet();
+        }
+        return compiled;
+    }
+
+    /**
+     * Returning the number of promoted compiled units
+     *
+     * @return
+     */
+    public static long getPromoted() {
+        return PROMOTED.get();
+    }
+
+    /**
+     * Returning the number of compiled units, which could not be translated
+     *
+     * @return
+     */
+    public static long getRejected() {
+        return REJECTED.get();
+    }
+
+    /**
+     * Returning the number of deoptimizations
+     *
+     * @return
+     */
+    public static long getDeoptimized() {
+        return DEOPTIMIZED.get();
+    }
+
+    /**
+     * The code being translated
+     */
+    private final TclByteCode bytecode;
+
+    /**
+     * The translated steps
+     */
+    private final List<Step> steps = new ArrayList<>();
+
+    /**
+     * Jump steps whose targets are to be resolved
+     */
+    private final List<Jump> jumps = new ArrayList<>();
+
+    /**
+     * The symbolic operand stack with values of type Text or Numeric
+     */
+    private final List<Object> stack = new ArrayList<>();
+
+    /**
+     * Constructor
+     *
+     * @param bytecode
+     */
+    protected TclJitCompiler(TclByteCode bytecode) {
+        this.bytecode = bytecode;
+    }
+
+    /**
+     * Translating the code
+     *
+     * @return
+     */
+    protected CompiledCode translate() {
+        final int[] code = bytecode.code;
+        final Object[] constants = bytecode.constants;
+        //Positions of jump targets and the step indices corresponding to them
+        boolean[] targets = new boolean[code.length + 1];
+        int[] indices = new int[code.length + 1];
+        for (int pc = 0; pc < code.length; pc += OPCODES[code[pc]].operands + 1) {
+            switch (OPCODES[code[pc]]) {
+                case JUMP:
+                case JUMP_FALSE:
+                    targets[code[pc + 1]] = true;
+                    break;
+                case GUARD:
+                    targets[code[pc + 2]] = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+        for (int pc = 0; pc < code.length; pc += OPCODES[code[pc]].operands + 1) {
+            if (targets[pc] && !stack.isEmpty()) {
+                return null;
+            }
+            indices[pc] = steps.size();
+            if (!translate(pc, code, constants)) {
+                return null;
+            }
+        }
+        indices[code.length] = steps.size();
+        for (Jump jump : jumps) {
+            jump.target = indices[jump.target];
+        }
+        //Converting the positions of completion handlers to step indices
+        int[] handlers = new int[bytecode.handlers.length];
+        for (int k = 0; k < handlers.length; k++) {
+            handlers[k] = indices[bytecode.handlers[k]];
+        }
+        if (bytecode.expression) {
+            return stack.size() == 1 ? new CompiledCode(bytecode, steps.toArray(new Step[steps.size()]), (Numeric) stack.get(0), handlers, indices) : null;
+        }
+        return stack.isEmpty() ? new CompiledCode(bytecode, steps.toArray(new Step[steps.size()]), null, handlers, indices) : null;
+    }
+
+    /**
+     * Translating one instruction
+     *
+     * @param pc
+     * @param code
+     * @param constants
+     * @return false if the instruction can not be translated
+     */
+    private boolean translate(int pc, int[] code, Object[] constants) {
+        final TclCompiler.Variable var;
+        final TclNode node;
+        final Text text;
+        final Numeric n1, n2, n3;
+        switch (OPCODES[code[pc]]) {
+            case PUSH:
+                final Object value = constants[code[pc + 1]];
+                if (value instanceof OpResult) {
+                    stack.add(new Constant((OpResult) value));
+                } else {
+                    stack.add((Text) interp -> (String) value);
+                }
+                break;
+            case LOAD_VAR:
+                var = (TclCompiler.Variable) constants[code[pc + 1]];
+                stack.add((Load) interp -> interp.context.getValue(var.name));
+                break;
+            case LOAD_ARRAY:
+                var = (TclCompiler.Variable) constants[code[pc + 1]];
+                stack.add((Load) interp -> interp.context.getArrayValue(var.name, var.index));
+                break;
+            case CONCAT:
+                final Text[] parts = new Text[code[pc + 1]];
+                for (int i = parts.length - 1; i >= 0; i--) {
+                    parts[i] = popText();
+                    if (parts[i] == null) {
+                        return false;
+                    }
+                }
+                stack.add((Text) interp -> {
+                    StringBuilder str = new StringBuilder();
+                    for (Text part : parts) {
+                        str.append(part.get(interp));
+                    }
+                    return str.toString();
+                });
+                break;
+            case EVAL:
+                final String script = (String) constants[code[pc + 1]];
+                stack.add((Text) interp -> TclInterpreter.listToString(interp.evaluateScript(script)));
+                break;
+            case INVOKE:
+                final TclCommandSite site = (TclCommandSite) constants[code[pc + 1]];
+                steps.add(frame -> {
+                    TclList res = frame.interp.executeCommand(site);
+                    frame.result = (res == null || res.isEmpty()) ? frame.result : res;
+                    return frame.next;
+                });
+                break;
+            case STORE_VAR:
+                var = (TclCompiler.Variable) constants[code[pc + 1]];
+                text = popText();
+                if (text == null) {
+                    return false;
+                }
+                steps.add(frame -> {
+                    TclValue val = valueOf(text, frame.interp);
+                    String str = val.toString();
+                    frame.interp.context.setValue(var.name, val);
+                    frame.interp.trace(TclTraceEvent.Kind.SET, var.name, str);
+                    frame.result = TclVirtualMachine.singleton(str);
+                    return frame.next;
+                });
+                break;
+            case STORE_ARRAY:
+                var = (TclCompiler.Variable) constants[code[pc + 1]];
+                text = popText();
+                if (text == null) {
+                    return false;
+                }
+                steps.add(frame -> {
+                    TclValue val = valueOf(text, frame.interp);
+                    String str = val.toString();
+                    frame.interp.context.setArrayValue(var.name, var.index, val);
+                    frame.interp.trace(TclTraceEvent.Kind.SET, var.name, var.index, str);
+                    frame.result = TclVirtualMachine.singleton(str);
+                    return frame.next;
+                });
+                break;
+            case EXPR_RESULT:
+                n1 = popNumeric();
+                if (n1 == null) {
+                    return false;
+                }
+                steps.add(frame -> {
+                    String str = n1.get(frame.interp).toString();
+                    frame.interp.trace(TclTraceEvent.Kind.EXPRESSION, null, str);
+                    frame.result = TclVirtualMachine.singleton(str);
+                    return frame.next;
+                });
+                break;
+            case TO_NUMBER:
+                text = popText();
+                if (text == null) {
+                    return false;
+                }
+                node = (TclNode) constants[code[pc + 1]];
+                if (text instanceof Load) {
+                    //Using the cached numeric form of the variable
+                    final Load load = (Load) text;
+                    stack.add((Numeric) interp -> {
+                        TclValue val = load.value(interp);
+                        if (val == null) {
+                            throw new TclExecutionException("The variable " + node.getValue() + " is not defined!", node);
+                        }
+                        return val.getNumber();
+                    });
+                    break;
+                }
+                stack.add((Numeric) interp -> {
+                    String str = text.get(interp);
+                    if (str == null) {
+                        throw new TclExecutionException("The variable " + node.getValue() + " is not defined!", node);
+                    }
+                    return TclExpressionInterpreter.readNumber(str);
+                });
+                break;
+            case TO_STRING:
+                text = popText();
+                if (text == null) {
+                    return false;
+                }
+                stack.add((Numeric) interp -> new OpResult(textOf(text.get(interp))));
+                break;
+            case UNARY:
+                node = (TclNode) constants[code[pc + 1]];
+                n1 = popNumeric();
+                if (n1 == null) {
+                    return false;
+                }
+                stack.add(fold(n1 instanceof Constant, interp
+                        -> TclExpressionInterpreter.applyUnaryOperation(node, n1.get(interp))));
+                break;
+            case BINARY:
+                node = (TclNode) constants[code[pc + 1]];
+                n2 = popNumeric();
+                n1 = popNumeric();
+                if (n1 == null || n2 == null) {
+                    return false;
+                }
+                stack.add(fold(n1 instanceof Constant && n2 instanceof Constant, binary(node, n1, n2)));
+                break;
+            case LOGIC:
+                node = (TclNode) constants[code[pc + 1]];
+                n1 = popNumeric();
+                n2 = translateExpression((TclByteCode) constants[code[pc + 2]]);
+                if (n1 == null || n2 == null) {
+                    return false;
+                }
+                stack.add(fold(n1 instanceof Constant && n2 instanceof Constant, interp -> {
+                    OpResult a = n1.get(interp);
+                    OpResult result = TclExpressionInterpreter.shortCircuit(node, a);
+                    return result != null ? result : TclExpressionInterpreter.applyBinaryOperation(node, a, n2.get(interp));
+                }));
+                break;
+            case TERNARY:
+                node = (TclNode) constants[code[pc + 1]];
+                n1 = popNumeric();
+                n2 = translateExpression((TclByteCode) constants[code[pc + 2]]);
+                n3 = translateExpression((TclByteCode) constants[code[pc + 3]]);
+                if (n1 == null || n2 == null || n3 == null) {
+                    return false;
+                }
+                stack.add(fold(n1 instanceof Constant && n2 instanceof Constant && n3 instanceof Constant, interp
+                        -> (TclExpressionInterpreter.chooseBranch(node, n1.get(interp)) ? n2 : n3).get(interp)));
+                break;
+            case FUNC:
+                final TclFunctionNode func = (TclFunctionNode) constants[code[pc + 1]];
+                n1 = popNumeric();
+                if (n1 == null) {
+                    return false;
+                }
+                stack.add(fold(n1 instanceof Constant, interp
+                        -> TclExpressionInterpreter.applyFunction(func, n1.get(interp))));
+                break;
+            case JUMP:
+                if (!stack.isEmpty()) {
+                    return false;
+                }
+                Jump jump = new Jump(code[pc + 1]);
+                jumps.add(jump);
+                steps.add(frame -> jump.target);
+                break;
+            case JUMP_FALSE:
+                n1 = popNumeric();
+                //The stack must be empty at a branch, so that the execution
+                //can be continued at any step
+                if (n1 == null || !stack.isEmpty()) {
+                    return false;
+                }
+                node = (TclNode) constants[code[pc + 2]];
+                final Jump exit = new Jump(code[pc + 1]);
+                jumps.add(exit);
+                steps.add(frame -> isTrue(n1.get(frame.interp), node, frame.interp) ? frame.next : exit.target);
+                break;
+            case GUARD:
+                if (!stack.isEmpty()) {
+                    return false;
+                }
+                final String name = (String) constants[code[pc + 1]];
+                steps.add(frame -> {
+                    if (!frame.interp.COMMANDS.isEmpty() && frame.interp.COMMANDS.containsKey(name)) {
+                        //The command is redefined, so continuing in the virtual machine
+                        frame.pc = pc;
+                        return DEOPTIMIZE;
+                    }
+                    return frame.next;
+                });
+                break;
+            default:
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Creating a binary operation with fast paths for integer arithmetic and
+     * comparisons
+     *
+     * @param node
+     * @param n1
+     * @param n2
+     * @return
+     */
+    private static Numeric binary(TclNode node, Numeric n1, Numeric n2) {
+        switch (node.getValue()) {
+            case "+":
+                return interp -> {
+                    OpResult a = n1.get(interp), b = n2.get(interp);
+                    return a.isLong() && b.isLong() ? new OpResult(a.getLong() + b.getLong())
+                            : TclExpressionInterpreter.applyBinaryOperation(node, a, b);
+                };
+            case "-":
+                return interp -> {
+                    OpResult a = n1.get(interp), b = n2.get(interp);
+                    return a.isLong() && b.isLong() ? new OpResult(a.getLong() - b.getLong())
+                            : TclExpressionInterpreter.applyBinaryOperation(node, a, b);
+                };
+            case "*":
+                return interp -> {
+                    OpResult a = n1.get(interp), b = n2.get(interp);
+                    return a.isLong() && b.isLong() ? new OpResult(a.getLong() * b.getLong())
+                            : TclExpressionInterpreter.applyBinaryOperation(node, a, b);
+                };
+            case "<":
+                return interp -> {
+                    OpResult a = n1.get(interp), b = n2.get(interp);
+                    return a.isLong() && b.isLong() ? new OpResult(a.getLong() < b.getLong() ? 1l : 0l)
+                            : TclExpressionInterpreter.applyBinaryOperation(node, a, b);
+                };
+            case "<=":
+                return interp -> {
+                    OpResult a = n1.get(interp), b = n2.get(interp);
+                    return a.isLong() && b.isLong() ? new OpResult(a.getLong() <= b.getLong() ? 1l : 0l)
+                            : TclExpressionInterpreter.applyBinaryOperation(node, a, b);
+                };
+            case ">":
+                return interp -> {
+                    OpResult a = n1.get(interp), b = n2.get(interp);
+                    return a.isLong() && b.isLong() ? new OpResult(a.getLong() > b.getLong() ? 1l : 0l)
+                            : TclExpressionInterpreter.applyBinaryOperation(node, a, b);
+                };
+            case ">=":
+                return interp -> {
+                    OpResult a = n1.get(interp), b = n2.get(interp);
+                    return a.isLong() && b.isLong() ? new OpResult(a.getLong() >= b.getLong() ? 1l : 0l)
+                            : TclExpressionInterpreter.applyBinaryOperation(node, a, b);
+                };
+            default:
+                return interp -> TclExpressionInterpreter.applyBinaryOperation(node, n1.get(interp), n2.get(interp));
+        }
+    }
+
+    /**
+     * Evaluating an operation with constant operands at translation time. If
+     * the evaluation fails, for example on a division by zero in a branch that
+     * is never taken, the operation is left to be evaluated at run time.
+     *
+     * @param constant are all operands constant?
+     * @param operation
+     * @return
+     */
+    private static Numeric fold(boolean constant, Numeric operation) {
+        if (constant) {
+            try {
+                return new Constant(operation.get(null));
+            } catch (TclExecutionException | RuntimeException ex) {
+            }
+        }
+        return operation;
+    }
+
+    /**
+     * Translating a compiled expression, which is a part of the code being
+     * translated
+     *
+     * @param expression
+     * @return the value or null if the expression can not be translated
+     */
+    private static Numeric translateExpression(TclByteCode expression) {
+        CompiledCode compiled = new TclJitCompiler(expression).translate();
+        if (compiled == null || compiled.steps.length != 0) {
+            return null;
+        }
+        return compiled.value;
+    }
+
+    /**
+     * Removing a string valued operand from the top of the symbolic stack
+     *
+     * @return the operand or null if the stack is empty or the operand has
+     * another type
+     */
+    private Text popText() {
+        Object value = stack.isEmpty() ? null : stack.remove(stack.size() - 1);
+        return value instanceof Text ? (Text) value : null;
+    }
+
+    /**
+     * Removing an expression valued operand from the top of the symbolic
+     * stack
+     *
+     * @return the operand or null if the stack is empty or the operand has
+     * another type
+     */
+    private Numeric popNumeric() {
+        Object value = stack.isEmpty() ? null : stack.remove(stack.size() - 1);
+        return value instanceof Numeric ? (Numeric) value : null;
+    }
+
+    /**
+     * Interpreting an expression value as a boolean the same way the virtual
+     * machine does
+     *
+     * @param value
+     * @param node the command node
+     * @param interp
+     * @return
+     * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
+     */
+    private static boolean isTrue(OpResult value, TclNode node, TclInterpreter interp) throws TclExecutionException {
+        if (value.isLong()) {
+            return value.getLong() != 0;
+        } else if (value.isDouble()) {
+            return value.getDouble() != 0;
+        }
+        Long bool = interp.readBooleanString(value.toString());
+        if (bool == null) {
+            throw new TclExecutionException("Expected a boolean value, but got '" + value + "'!", node);
+        }
+        return bool == 1;
+    }
+
+    /**
+     * Returning a string value the same way as substitutions do
+     *
+     * @param value
+     * @return
+     */
+    private static String textOf(String value) {
+        return value == null ? "null" : value;
+    }
+
+    /**
+     * Evaluating an operand as a value object, keeping the internal forms of
+     * loaded values
+     *
+     * @param text
+     * @param interp
+     * @return
+     * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
+     */
+    private static TclValue valueOf(Text text, TclInterpreter interp) throws TclExecutionException {
+        TclValue value = text instanceof Load ? ((Load) text).value(interp) : null;
+        return value == null ? TclValue.of(textOf(text.get(interp))) : value;
+    }
+
+    /**
+     * Translated code ready for execution
+     */
+    public static class CompiledCode {
+
+        /**
+         * The code, which has been translated
+         */
+        private final TclByteCode bytecode;
+
+        /**
+         * The translated steps
+         */
+        private final Step[] steps;
+
+        /**
+         * The value of an expression or null for scripts
+         */
+        private final Numeric value;
+
+        /**
+         * The completion handlers of inline loops with step indices
+         */
+        private final int[] handlers;
+
+        /**
+         * The step indices by instruction positions, valid at jump targets
+         */
+        private final int[] indices;
+
+        /**
+         * Constructor
+         *
+         * @param bytecode
+         * @param steps
+         * @param value
+         * @param handlers
+         * @param indices
+         */
+        private CompiledCode(TclByteCode bytecode, Step[] steps, Numeric value, int[] handlers, int[] indices) {
+            this.bytecode = bytecode;
+            this.steps = steps;
+            this.value = value;
+            this.handlers = handlers;
+            this.indices = indices;
+        }
+
+        /**
+         * Running the translated code. If a guard fails, the code is
+         * deoptimized and the execution continues in the virtual machine.
+         *
+         * @param vm
+         * @return the value of an expression or the result of a script
+         * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
+         */
+        protected Object run(TclVirtualMachine vm) throws TclExecutionException {
+            return run(vm, 0, null);
+        }
+
+        /**
+         * Running the translated code from the head of a loop, which has
+         * become hot in the virtual machine
+         *
+         * @param vm
+         * @param pc the position of the loop head, which is a jump target
+         * @param result the current script result
+         * @return the value of an expression or the result of a script
+         * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
+         */
+        protected Object run(TclVirtualMachine vm, int pc, TclList result) throws TclExecutionException {
+            Frame frame = new Frame(vm.interpreter);
+            frame.result = result;
+            int i = indices[pc];
+            while (i < steps.length) {
+                frame.next = i + 1;
+                try {
+                    i = steps[i].execute(frame);
+                } catch (TclCompletion ex) {
+                    //Continuing at the target of 'break' or 'continue' in an inline loop
+                    int target = TclByteCode.findHandler(handlers, i, ex.getCode());
+                    if (target < 0) {
+                        throw ex;
+                    }
+                    i = target;
+                }
+                if (i == DEOPTIMIZE) {
+                    if (bytecode.compiled == this) {
+                        bytecode.compiled = null;
+                        bytecode.invocations = 0;
+                        bytecode.deoptimizations++;
+                        DEOPTIMIZED.incrementAndGet();
+                    }
+                    return vm.interpret(bytecode, frame.pc, frame.result);
+                }
+            }
+            return value == null ? frame.result : value.get(frame.interp);
+        }
+    }
+
+    /**
+     * The state of one execution of translated code
+     */
+    private static class Frame {
+
+        /**
+         * The interpreter
+         */
+        private final TclInterpreter interp;
+
+        /**
+         * The current script result
+         */
+        private TclList result = null;
+
+        /**
+         * The index of the next step
+         */
+        private int next;
+
+        /**
+         * The instruction position to continue from after a deoptimization
+         */
+        private int pc;
+
+        /**
+         * Constructor
+         *
+         * @param interp
+         */
+        private Frame(TclInterpreter interp) {
+            this.interp = interp;
+        }
+    }
+
+    /**
+     * A jump target, which is resolved after the translation
+     */
+    private static class Jump {
+
+        /**
+         * The instruction position and then the step index
+         */
+        private int target;
+
+        /**
+         * Constructor
+         *
+         * @param target
+         */
+        private Jump(int target) {
+            this.target = target;
+        }
+    }
+
+    /**
+     * A constant expression value
+     */
+    private static class Constant implements Numeric {
+
+        /**
+         * The value
+         */
+        private final OpResult value;
+
+        /**
+         * Constructor
+         *
+         * @param value
+         */
+        private Constant(OpResult value) {
+            this.value = value;
+        }
+
+        @Override
+        public OpResult get(TclInterpreter interp) {
+            return value;
+        }
+    }
+
+    /**
+     * A statement of translated code
+     */
+    private interface Step {
+
+        /**
+         * Executing the step
+         *
+         * @param frame
+         * @return the index of the next step
+         * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
+         */
+        public int execute(Frame frame) throws TclExecutionException;
+    }
+
+    /**
+     * A string valued operand
+     */
+    private interface Text {
+
+        /**
+         * Evaluating the operand
+         *
+         * @param interp
+         * @return
+         * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
+         */
+        public String get(TclInterpreter interp) throws TclExecutionException;
+    }
+
+    /**
+     * A variable valued operand
+     */
+    private interface Load extends Text {
+
+        /**
+         * Reading the variable
+         *
+         * @param interp
+         * @return the value or null if the variable is not defined
+         */
+        public TclValue value(TclInterpreter interp);
+
+        @Override
+        public default String get(TclInterpreter interp) {
+            TclValue value = value(interp);
+            return value == null ? null : value.toString();
+        }
+    }
+
+    /**
+     * An expression valued operand
+     */
+    private interface Numeric {
+
+        /**
+         * Evaluating the operand
+         *
+         * @param interp
+         * @return
+         * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
+         */
+        public OpResult get(TclInterpreter interp) throws TclExecutionException;
+    }
+}
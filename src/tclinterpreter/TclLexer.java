@@ -16,9 +16,6 @@
  */
 package tclinterpreter;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * A class for TCL lexer
  *
@@ -27,17 +24,6 @@ import java.util.Map;
  */
 public class TclLexer extends AbstractTclLexer {
 
-    /**
-     * A map for final string characters
-     */
-    protected static final Map<Character, Character> MIRRORMAP = new HashMap<>();
-
-    static {
-        MIRRORMAP.put('"', '"');
-        MIRRORMAP.put('[', ']');
-        MIRRORMAP.put('{', '}');
-    }
-
     /**
      * Flag indicating that the lexer is inside quotation
      */
@@ -62,23 +48,31 @@ public class TclLexer extends AbstractTclLexer {
         super(script, false);
     }
 
+    /**
+     * Constructor reading the script from an input, which allows lexing
+     * streamed scripts without keeping them in memory
+     *
+     * @param input the source of the script characters
+     */
+    public TclLexer(TclLexerInput input) {
+        super(input, false);
+    }
+
     /**
      * Reading alphanumerical names (with possible index in parentheses) from
      * the script
      *
      * @return
      */
-    protected String readName() {
-        StringBuilder name = new StringBuilder("");
+    protected TclToken readName() {
+        beginToken();
         int counter = 0; //Parentheses counter
-        while ((Character.isDigit(getCurrentchar())
-                || Character.isLetter(getCurrentchar())
-                || getCurrentchar() == '_'
+        while ((isNameChar(getCurrentchar())
                 || getCurrentchar() == '('
                 || (getCurrentchar() == ')' && counter > 0))
                 && getCurrentchar() != 0) {
             if (getCurrentchar() == '\\') {
-                name.append(replaceSymbol());
+                consumeSymbol();
             } else {
                 //Incrementing or decrementing parentheses counter
                 if (getCurrentchar() == '(') {
@@ -86,11 +80,10 @@ public class TclLexer extends AbstractTclLexer {
                 } else if (getCurrentchar() == ')') {
                     counter--;
                 }
-                name.append(getCurrentchar());
-                advancePosition();
+                consumeChar();
             }
         }
-        return name.toString();
+        return endToken(TclTokenType.NAME);
     }
 
     /**
@@ -98,18 +91,17 @@ public class TclLexer extends AbstractTclLexer {
      *
      * @return
      */
-    protected String readWord() {
-        StringBuilder name = new StringBuilder("");
-        while (!Character.isWhitespace(getCurrentchar()) && getCurrentchar() != '['
+    protected TclToken readWord() {
+        beginToken();
+        while (!isWhitespace(getCurrentchar()) && getCurrentchar() != '['
                 && getCurrentchar() != ';' && getCurrentchar() != '$' && getCurrentchar() != 0) {
             if (getCurrentchar() == '\\') {
-                name.append(replaceSymbol());
+                consumeSymbol();
             } else {
-                name.append(getCurrentchar());
-                advancePosition();
+                consumeChar();
             }
         }
-        return name.toString();
+        return endToken(TclTokenType.WORD);
     }
 
     /**
@@ -119,22 +111,22 @@ public class TclLexer extends AbstractTclLexer {
      * @param endchar the end symbol
      * @return
      */
-    protected String readString(char endchar) {
-        StringBuilder string = new StringBuilder("");
+    protected TclToken readString(char endchar) {
+        beginToken();
+        char closingchar = mirror(endchar);
         int counter = 1;
         while (counter > 0 && getCurrentchar() != 0) {
-            if (getCurrentchar() == endchar && endchar != MIRRORMAP.get(endchar)) {
+            if (getCurrentchar() == endchar && endchar != closingchar) {
                 counter++;
             }
-            if (getCurrentchar() == MIRRORMAP.get(endchar)) {
+            if (getCurrentchar() == closingchar) {
                 counter--;
             }
             if (counter != 0) {
-                string.append(getCurrentchar());
-                advancePosition();
+                consumeChar();
             }
         }
-        return string.toString();
+        return endToken(TclTokenType.STRING);
     }
     
     /**
@@ -142,13 +134,12 @@ public class TclLexer extends AbstractTclLexer {
      * 
      * @return
      */
-    protected String readComment () {
-        StringBuilder string = new StringBuilder("");
+    protected TclToken readComment () {
+        beginToken();
         while (getCurrentchar() != '\n' && getCurrentchar() != '\r' && getCurrentchar() != 0) {
-            string.append(getCurrentchar());
-            advancePosition();
+            consumeChar();
         }
-        return string.toString();
+        return endToken(TclTokenType.CMT);
     }
 
     @Override
@@ -161,14 +152,14 @@ public class TclLexer extends AbstractTclLexer {
             Returning a comment token
             */
             advancePosition();
-            return new TclToken(TclTokenType.CMT).setValue(readComment());
+            return readComment();
         } else if ((peekback() == '"' && qflag)
                 || peekback() == '{' || peekback() == '[') {
             /*
              Reading and returning a string of symbols
              */
-            return new TclToken(TclTokenType.STRING).setValue(readString(peekback()));
-        } else if (getCurrentchar() == '{' && Character.isWhitespace(peekback())) {
+            return readString(peekback());
+        } else if (getCurrentchar() == '{' && isWhitespace(peekback())) {
             /*
              Returning a left brace token
              */
@@ -182,7 +173,7 @@ public class TclLexer extends AbstractTclLexer {
             curlyflag = false;
             advancePosition();
             return new TclToken(TclTokenType.RIGHTCURL);
-        } else if (getCurrentchar() == '"' && !qflag && Character.isWhitespace(peekback())) {
+        } else if (getCurrentchar() == '"' && !qflag && isWhitespace(peekback())) {
             /*
              Returning a left quote token
              */
@@ -208,7 +199,7 @@ public class TclLexer extends AbstractTclLexer {
              */
             skipWhitespace();
             return new TclToken(TclTokenType.EOL);
-        } else if (Character.isWhitespace(getCurrentchar())) {
+        } else if (isWhitespace(getCurrentchar())) {
             /*
              Skipping whitespace and returning a whitespace token
              */
@@ -234,18 +225,17 @@ public class TclLexer extends AbstractTclLexer {
              */
             advancePosition();
             return new TclToken(TclTokenType.DOLLAR);
-        } else if ((getCurrentchar() == '_' || Character.isLetter(getCurrentchar()))
+        } else if (isNameStart(getCurrentchar())
                 && peekback() == '$') {
             /*
              Returning a name token
              */
-            return new TclToken(TclTokenType.NAME).setValue(readName());
-        } else if ((getCurrentchar() == '_' || getCurrentchar() == '\\'
-                || Character.isDigit(getCurrentchar()) || Character.isLetter(getCurrentchar()))) {
+            return readName();
+        } else if (isNameChar(getCurrentchar()) || getCurrentchar() == '\\' || getCurrentchar() == '-') {
             /*
-             Returning a Tclword token
+             Returning a Tclword token, which may be an option or a negative number
              */
-            return new TclToken(TclTokenType.WORD).setValue(readWord());
+            return readWord();
         } else {
             return null;
         }
@@ -0,0 +1,448 @@
+/*
+ * Copyright (C) 2016 Ruslan Feshchenko
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tclinterpreter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A source of characters for Tcl lexers. Characters are requested in the
+ * increasing order of positions, so streamed inputs only keep a window of the
+ * script starting at the beginning of the token being read.
+ *
+ * @author Ruslan Feshchenko
+ * @version 0.1
+ */
+public abstract class TclLexerInput {
+
+    /**
+     * Creating an input for a script in memory
+     *
+     * @param script
+     * @return
+     */
+    public static TclLexerInput of(CharSequence script) {
+        return new StringInput(script);
+    }
+
+    /**
+     * Creating an input streamed from a reader
+     *
+     * @param reader
+     * @return
+     */
+    public static TclLexerInput of(Reader reader) {
+        return new ReaderInput(reader);
+    }
+
+    /**
+     * Creating an input streamed from a channel
+     *
+     * @param channel
+     * @param charset the charset to decode the bytes
+     * @return
+     */
+    public static TclLexerInput of(ReadableByteChannel channel, Charset charset) {
+        return new ReaderInput(Channels.newReader(channel, charset.newDecoder(), -1));
+    }
+
+    /**
+     * Creating an input for a memory-mapped script file. Files in single-byte
+     * charsets are lexed directly from the mapped bytes, other files are
+     * decoded from the mapping as they are read.
+     *
+     * @param path
+     * @param charset the charset of the file
+     * @return
+     * @throws IOException
+     */
+    public static TclLexerInput map(Path path, Charset charset) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (charset.equals(StandardCharsets.ISO_8859_1) || charset.equals(StandardCharsets.US_ASCII)) {
+            return new MappedInput(new ByteSequence(buffer, 0, buffer.limit()));
+        }
+        return of(new BufferChannel(buffer), charset);
+    }
+
+    /**
+     * Is there a character at the given position? Streamed inputs read
+     * further characters if necessary.
+     *
+     * @param pos
+     * @return
+     */
+    public abstract boolean has(int pos);
+
+    /**
+     * Returning the character at the given position, for which has() has
+     * returned true
+     *
+     * @param pos
+     * @return
+     */
+    public abstract char charAt(int pos);
+
+    /**
+     * Returning the number of characters, which is known once has() has
+     * returned false
+     *
+     * @return
+     */
+    public abstract int length();
+
+    /**
+     * Keeping the characters starting from the given position available for
+     * slices
+     *
+     * @param pos the position or -1 to release the characters
+     */
+    public void mark(int pos) {
+    }
+
+    /**
+     * Returning the characters between the two positions. Streamed inputs
+     * only keep the characters after the mark.
+     *
+     * @param start
+     * @param end
+     * @return
+     */
+    public abstract CharSequence subSequence(int start, int end);
+
+    /**
+     * Creating a token whose value are the characters between the two
+     * positions
+     *
+     * @param type
+     * @param start
+     * @param end
+     * @return
+     */
+    public abstract TclToken slice(TclTokenType type, int start, int end);
+
+    /**
+     * Returning the whole script or null if it is streamed
+     *
+     * @return
+     */
+    public abstract String getScript();
+
+    /**
+     * An input for a script in memory. Tokens are slices of the script.
+     */
+    protected static class StringInput extends TclLexerInput {
+
+        /**
+         * The script
+         */
+        private final CharSequence script;
+
+        /**
+         * Constructor
+         *
+         * @param script
+         */
+        protected StringInput(CharSequence script) {
+            this.script = script;
+        }
+
+        @Override
+        public boolean has(int pos) {
+            return pos < script.length();
+        }
+
+        @Override
+        public char charAt(int pos) {
+            return script.charAt(pos);
+        }
+
+        @Override
+        public int length() {
+            return script.length();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return script.subSequence(start, end);
+        }
+
+        @Override
+        public TclToken slice(TclTokenType type, int start, int end) {
+            return new TclToken(type, script, start, end - start);
+        }
+
+        @Override
+        public String getScript() {
+            return script.toString();
+        }
+    }
+
+    /**
+     * An input for a memory-mapped file in a single-byte charset. Tokens are
+     * slices of the mapped bytes.
+     */
+    protected static class MappedInput extends StringInput {
+
+        /**
+         * Constructor
+         *
+         * @param script
+         */
+        protected MappedInput(ByteSequence script) {
+            super(script);
+        }
+
+        @Override
+        public String getScript() {
+            return null;
+        }
+    }
+
+    /**
+     * A sequence of characters, each of which is a byte of a buffer
+     */
+    protected static class ByteSequence implements CharSequence {
+
+        /**
+         * The buffer
+         */
+        private final ByteBuffer buffer;
+
+        /**
+         * The offset and the length of the sequence in the buffer
+         */
+        private final int offset, length;
+
+        /**
+         * Constructor
+         *
+         * @param buffer
+         * @param offset
+         * @param length
+         */
+        protected ByteSequence(ByteBuffer buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (buffer.get(offset + index) & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new ByteSequence(buffer, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(offset + i);
+            }
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /**
+     * A channel reading the bytes of a buffer
+     */
+    protected static class BufferChannel implements ReadableByteChannel {
+
+        /**
+         * The buffer
+         */
+        private final ByteBuffer buffer;
+
+        /**
+         * Constructor
+         *
+         * @param buffer
+         */
+        protected BufferChannel(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(dst.remaining(), buffer.remaining());
+            ByteBuffer chunk = buffer.slice();
+            chunk.limit(n);
+            dst.put(chunk);
+            buffer.position(buffer.position() + n);
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * An input with a sliding buffer of characters read from a reader
+     */
+    protected static class ReaderInput extends TclLexerInput {
+
+        /**
+         * The initial size of the buffer
+         */
+        private static final int BUFFER_SIZE = 8192;
+
+        /**
+         * The reader
+         */
+        private final Reader reader;
+
+        /**
+         * The buffer
+         */
+        private char[] buffer = new char[BUFFER_SIZE];
+
+        /**
+         * The position of the first buffered character
+         */
+        private int base = 0;
+
+        /**
+         * The number of buffered characters
+         */
+        private int count = 0;
+
+        /**
+         * The first position to keep or -1
+         */
+        private int mark = -1;
+
+        /**
+         * Has the end of the stream been reached?
+         */
+        private boolean eof = false;
+
+        /**
+         * Constructor
+         *
+         * @param reader
+         */
+        protected ReaderInput(Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean has(int pos) {
+            while (pos - base >= count) {
+                if (!fill(pos)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public char charAt(int pos) {
+            return buffer[pos - base];
+        }
+
+        @Override
+        public int length() {
+            return base + count;
+        }
+
+        @Override
+        public void mark(int pos) {
+            mark = pos;
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(buffer, start - base, end - start);
+        }
+
+        @Override
+        public TclToken slice(TclTokenType type, int start, int end) {
+            return new TclToken(type).setValue(new String(buffer, start - base, end - start));
+        }
+
+        @Override
+        public String getScript() {
+            return null;
+        }
+
+        /**
+         * Dropping the characters, which are no longer needed, and reading
+         * more characters
+         *
+         * @param pos the requested position
+         * @return false if the end of the stream is reached
+         */
+        private boolean fill(int pos) {
+            if (eof) {
+                return false;
+            }
+            //Only the previous character and the marked characters are kept
+            int keep = Math.min(Math.max(mark >= 0 ? Math.min(mark, pos - 1) : pos - 1, base), base + count);
+            if (keep > base) {
+                System.arraycopy(buffer, keep - base, buffer, 0, base + count - keep);
+                count -= keep - base;
+                base = keep;
+            }
+            if (count == buffer.length) {
+                char[] newbuffer = new char[buffer.length * 2];
+                System.arraycopy(buffer, 0, newbuffer, 0, count);
+                buffer = newbuffer;
+            }
+            try {
+                int n = reader.read(buffer, count, buffer.length - count);
+                if (n < 0) {
+                    eof = true;
+                    reader.close();
+                    return false;
+                }
+                count += n;
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return true;
+        }
+    }
+}
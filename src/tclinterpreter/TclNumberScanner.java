@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2016 Ruslan Feshchenko
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tclinterpreter;
+
+import tclinterpreter.TclExpressionInterpreter.OpResult;
+
+/**
+ * A single-pass scanner classifying strings as Tcl numbers and booleans
+ * without using exceptions. Integers may be decimal or have the prefixes 0x,
+ * 0o or 0b, doubles may have a fraction, an exponent or be Inf or NaN.
+ * Leading and trailing whitespace is ignored.
+ *
+ * @author Ruslan Feshchenko
+ * @version 0.1
+ */
+public class TclNumberScanner {
+
+    /**
+     * Not instantiable
+     */
+    private TclNumberScanner() {
+    }
+
+    /**
+     * Reading a number
+     *
+     * @param str
+     * @return the number or null if the string is not a number
+     */
+    public static OpResult scan(String str) {
+        int end = str.length();
+        int pos = 0;
+        //Skipping whitespace
+        while (pos < end && Character.isWhitespace(str.charAt(pos))) {
+            pos++;
+        }
+        while (end > pos && Character.isWhitespace(str.charAt(end - 1))) {
+            end--;
+        }
+        if (pos == end) {
+            return null;
+        }
+        int start = pos;
+        boolean negative = false;
+        char c = str.charAt(pos);
+        if (c == '+' || c == '-') {
+            negative = c == '-';
+            if (++pos == end) {
+                return null;
+            }
+            c = str.charAt(pos);
+        }
+        //Integers with a radix prefix
+        if (c == '0' && pos + 1 < end) {
+            switch (str.charAt(pos + 1)) {
+                case 'x':
+                case 'X':
+                    return scanInteger(str, pos + 2, end, 16, negative);
+                case 'o':
+                case 'O':
+                    return scanInteger(str, pos + 2, end, 8, negative);
+                case 'b':
+                case 'B':
+                    return scanInteger(str, pos + 2, end, 2, negative);
+                default:
+                    break;
+            }
+        }
+        if (c == 'I' || c == 'i' || c == 'N' || c == 'n') {
+            return scanSpecial(str, pos, end, negative);
+        }
+        //Decimal integers and doubles
+        long value = 0;
+        boolean overflow = false;
+        int digits = 0;
+        while (pos < end && (c = str.charAt(pos)) >= '0' && c <= '9') {
+            //Accumulating negatively as the negative range is larger
+            int d = c - '0';
+            if (value < (Long.MIN_VALUE + d) / 10) {
+                overflow = true;
+            }
+            value = value * 10 - d;
+            digits++;
+            pos++;
+        }
+        if (pos == end) {
+            if (digits == 0) {
+                return null;
+            }
+            if (!overflow && (negative || value != Long.MIN_VALUE)) {
+                return new OpResult(negative ? value : -value);
+            }
+            return new OpResult(Double.parseDouble(str.substring(start, end)));
+        }
+        if (c == '.') {
+            pos++;
+            while (pos < end && (c = str.charAt(pos)) >= '0' && c <= '9') {
+                digits++;
+                pos++;
+            }
+        }
+        if (digits == 0) {
+            return null;
+        }
+        if (pos < end && (c == 'e' || c == 'E')) {
+            if (++pos < end && ((c = str.charAt(pos)) == '+' || c == '-')) {
+                pos++;
+            }
+            int exponent = 0;
+            while (pos < end && (c = str.charAt(pos)) >= '0' && c <= '9') {
+                exponent++;
+                pos++;
+            }
+            if (exponent == 0) {
+                return null;
+            }
+        }
+        if (pos != end) {
+            return null;
+        }
+        //The syntax is valid, so parsing can not fail
+        return new OpResult(Double.parseDouble(str.substring(start, end)));
+    }
+
+    /**
+     * Reading an integer with a radix prefix. Integers not fitting into the
+     * long type are read as doubles.
+     *
+     * @param str
+     * @param pos the position after the prefix
+     * @param end
+     * @param radix
+     * @param negative
+     * @return the number or null
+     */
+    private static OpResult scanInteger(String str, int pos, int end, int radix, boolean negative) {
+        if (pos == end) {
+            return null;
+        }
+        long value = 0;
+        double dvalue = 0;
+        boolean overflow = false;
+        for (; pos < end; pos++) {
+            int d = Character.digit(str.charAt(pos), radix);
+            if (d < 0) {
+                return null;
+            }
+            if (value > (Long.MAX_VALUE - d) / radix) {
+                overflow = true;
+            }
+            value = value * radix + d;
+            dvalue = dvalue * radix + d;
+        }
+        if (overflow) {
+            return new OpResult(negative ? -dvalue : dvalue);
+        }
+        return new OpResult(negative ? -value : value);
+    }
+
+    /**
+     * Reading Inf, Infinity or NaN
+     *
+     * @param str
+     * @param pos
+     * @param end
+     * @param negative
+     * @return the number or null
+     */
+    private static OpResult scanSpecial(String str, int pos, int end, boolean negative) {
+        int length = end - pos;
+        if ((length == 3 || length == 8) && str.regionMatches(true, pos, "infinity", 0, length)) {
+            return new OpResult(negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY);
+        }
+        if (length == 3 && str.regionMatches(true, pos, "nan", 0, 3)) {
+            return new OpResult(Double.NaN);
+        }
+        return null;
+    }
+
+    /**
+     * Reading a boolean value, which is either a number or one of the words
+     * yes, true, no and false in any case
+     *
+     * @param str
+     * @return 1, 0 or null if the string is not a boolean value
+     */
+    public static Long scanBoolean(String str) {
+        OpResult number = scan(str);
+        if (number != null) {
+            return number.getDouble() == 0 ? 0l : 1l;
+        }
+        if (str.equalsIgnoreCase("yes") || str.equalsIgnoreCase("true")) {
+            return 1l;
+        }
+        if (str.equalsIgnoreCase("no") || str.equalsIgnoreCase("false")) {
+            return 0l;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2016 Ruslan Feshchenko
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tclinterpreter;
+
+/**
+ * An enumeration for the instructions of compiled Tcl code. The operands of
+ * an instruction follow its code in the instruction array and are either
+ * indexes in the constant pool or jump targets.
+ *
+ * @author Ruslan Feshchenko
+ * @version 0.1
+ */
+public enum TclOpCode {
+
+    /**
+     * Pushing a constant: string or expression value
+     */
+    PUSH(1),
+    /**
+     * Pushing the value of a variable
+     */
+    LOAD_VAR(1),
+    /**
+     * Pushing the value of an array element
+     */
+    LOAD_ARRAY(1),
+    /**
+     * Concatenating a number of strings on the top of the stack
+     */
+    CONCAT(1),
+    /**
+     * Evaluating a script and pushing its result
+     */
+    EVAL(1),
+    /**
+     * Invoking a command by its site
+     */
+    INVOKE(1),
+    /**
+     * Setting a variable to the value on the top of the stack
+     */
+    STORE_VAR(1),
+    /**
+     * Setting an array element to the value on the top of the stack
+     */
+    STORE_ARRAY(1),
+    /**
+     * Making the expression value on the top of the stack the command result
+     */
+    EXPR_RESULT(0),
+    /**
+     * Converting the string on the top of the stack to a numeric value
+     */
+    TO_NUMBER(1),
+    /**
+     * Converting the string on the top of the stack to a string value
+     */
+    TO_STRING(0),
+    /**
+     * Applying an unary operation
+     */
+    UNARY(1),
+    /**
+     * Applying a binary operation
+     */
+    BINARY(1),
+    /**
+     * Applying the logical operation && or || to the value on the top of the
+     * stack and, only if needed, to the value of a compiled expression
+     */
+    LOGIC(2),
+    /**
+     * Replacing the condition on the top of the stack by the value of one of
+     * two compiled expressions
+     */
+    TERNARY(3),
+    /**
+     * Applying a mathematical function
+     */
+    FUNC(1),
+    /**
+     * Unconditional jump
+     */
+    JUMP(1),
+    /**
+     * Jump if the value on the top of the stack is false
+     */
+    JUMP_FALSE(2),
+    /**
+     * Jump if a command is redefined by the interpreter
+     */
+    GUARD(2);
+
+    /**
+     * The number of operands
+     */
+    public final int operands;
+
+    /**
+     * Constructor
+     *
+     * @param operands
+     */
+    private TclOpCode(int operands) {
+        this.operands = operands;
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2016 Ruslan Feshchenko
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tclinterpreter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A buffered output channel for interpreter output. Characters are encoded
+ * into a reusable byte buffer, which is written to the underlying stream
+ * according to the flush policy or when it is full. The channel may be shared
+ * by several interpreters.
+ *
+ * @author Ruslan Feshchenko
+ * @version 0.1
+ */
+public class TclOutputChannel {
+
+    /**
+     * The default size of the byte buffer
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /**
+     * The underlying stream
+     */
+    private final OutputStream out;
+
+    /**
+     * The encoder
+     */
+    private final CharsetEncoder encoder;
+
+    /**
+     * The reusable buffer of characters to encode
+     */
+    private final CharBuffer chars;
+
+    /**
+     * The reusable buffer of encoded bytes
+     */
+    private final ByteBuffer bytes;
+
+    /**
+     * The flush policy
+     */
+    private FlushPolicy policy = FlushPolicy.LINE;
+
+    /**
+     * The number of buffered bytes causing a flush with the THRESHOLD policy
+     */
+    private int sizeThreshold;
+
+    /**
+     * The time in milliseconds since the last flush causing a flush with the
+     * THRESHOLD policy
+     */
+    private long intervalThreshold = 1000;
+
+    /**
+     * The time of the last flush
+     */
+    private long lastFlush = System.currentTimeMillis();
+
+    /**
+     * Constructor
+     *
+     * @param out the underlying stream
+     * @param charset
+     * @param size the size of the byte buffer
+     */
+    public TclOutputChannel(OutputStream out, Charset charset, int size) {
+        this.out = out;
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.bytes = ByteBuffer.allocate(Math.max(size, 16));
+        this.chars = CharBuffer.allocate(bytes.capacity());
+        this.sizeThreshold = bytes.capacity();
+    }
+
+    /**
+     * Constructor with the default size of the byte buffer
+     *
+     * @param out the underlying stream
+     * @param charset
+     */
+    public TclOutputChannel(OutputStream out, Charset charset) {
+        this(out, charset, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Writing a string
+     *
+     * @param str
+     * @return this channel
+     * @throws IOException
+     */
+    public synchronized TclOutputChannel append(String str) throws IOException {
+        int pos = 0;
+        while (pos < str.length()) {
+            int n = Math.min(chars.remaining(), str.length() - pos);
+            str.getChars(pos, pos + n, chars.array(), chars.arrayOffset() + chars.position());
+            chars.position(chars.position() + n);
+            pos += n;
+            chars.flip();
+            //Writing the bytes out whenever the byte buffer overflows
+            while (encoder.encode(chars, bytes, false).isOverflow()) {
+                drain();
+            }
+            //Keeping an incomplete surrogate pair for the next write
+            chars.compact();
+        }
+        switch (policy) {
+            case LINE:
+                if (str.indexOf('\n') >= 0) {
+                    flush();
+                }
+                break;
+            case THRESHOLD:
+                if (bytes.position() >= sizeThreshold
+                        || System.currentTimeMillis() - lastFlush >= intervalThreshold) {
+                    flush();
+                }
+                break;
+            default:
+                break;
+        }
+        return this;
+    }
+
+    /**
+     * Writing all buffered bytes to the underlying stream and flushing it
+     *
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException {
+        drain();
+        out.flush();
+        lastFlush = System.currentTimeMillis();
+    }
+
+    /**
+     * Writing the buffered bytes to the underlying stream
+     *
+     * @throws IOException
+     */
+    private void drain() throws IOException {
+        if (bytes.position() > 0) {
+            out.write(bytes.array(), bytes.arrayOffset(), bytes.position());
+            bytes.clear();
+        }
+    }
+
+    /**
+     * Returning the flush policy
+     *
+     * @return
+     */
+    public synchronized FlushPolicy getFlushPolicy() {
+        return policy;
+    }
+
+    /**
+     * Setting the flush policy
+     *
+     * @param policy
+     */
+    public synchronized void setFlushPolicy(FlushPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Setting the thresholds of the THRESHOLD policy
+     *
+     * @param size the number of buffered bytes causing a flush
+     * @param interval the time in milliseconds since the last flush causing a
+     * flush
+     */
+    public synchronized void setThresholds(int size, long interval) {
+        this.sizeThreshold = size;
+        this.intervalThreshold = interval;
+    }
+
+    /**
+     * An enumeration for the flush policies. Output is also flushed when the
+     * buffer is full, by the 'flush' command and at the end of each run.
+     */
+    public static enum FlushPolicy {
+
+        /**
+         * Never flushing after writes
+         */
+        NEVER,
+        /**
+         * Flushing after writes containing a newline
+         */
+        LINE,
+        /**
+         * Flushing when the number of buffered bytes or the time since the
+         * last flush exceeds a threshold. The time is only checked on writes.
+         */
+        THRESHOLD
+    }
+}
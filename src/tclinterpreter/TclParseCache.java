@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2016 Ruslan Feshchenko
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tclinterpreter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded thread-safe cache of parsed Tcl sources with the LRU eviction
+ * policy. Cached values are shared and must not be modified by the users.
+ *
+ * @author Ruslan Feshchenko
+ * @version 0.1
+ * @param <V> the class of cached values
+ */
+public class TclParseCache<V> {
+
+    /**
+     * The default maximal number of cached entries
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * The maximal number of cached entries
+     */
+    private final int capacity;
+
+    /**
+     * Cached entries in the access order
+     */
+    private final Map<String, V> entries;
+
+    /**
+     * The number of cache hits
+     */
+    private long hits = 0;
+
+    /**
+     * The number of cache misses
+     */
+    private long misses = 0;
+
+    /**
+     * Constructor
+     *
+     * @param capacity the maximal number of cached entries
+     */
+    public TclParseCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The cache capacity must be positive!");
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > TclParseCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Constructor with the default capacity
+     */
+    public TclParseCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Returning the cached value for a source or parsing and caching it. The
+     * parsing is done outside of the lock, so two threads may occasionally
+     * parse the same source, but only one result is kept.
+     *
+     * @param source the source string
+     * @param parser the parser to use if the source is not cached
+     * @return
+     * @throws tclinterpreter.AbstractTclParser.TclParserError
+     */
+    public V get(String source, Parser<V> parser) throws AbstractTclParser.TclParserError {
+        V value;
+        synchronized (this) {
+            value = entries.get(source);
+            if (value != null) {
+                hits++;
+                return value;
+            }
+            misses++;
+        }
+        value = parser.parse(source);
+        synchronized (this) {
+            V cached = entries.get(source);
+            if (cached != null) {
+                return cached;
+            }
+            entries.put(source, value);
+        }
+        return value;
+    }
+
+    /**
+     * Removing all cached entries and resetting the counters
+     */
+    public synchronized void clear() {
+        entries.clear();
+        hits = 0;
+        misses = 0;
+    }
+
+    /**
+     * Returning the number of cached entries
+     *
+     * @return
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returning the maximal number of cached entries
+     *
+     * @return
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returning the number of cache hits
+     *
+     * @return
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returning the number of cache misses
+     *
+     * @return
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Cache size: " + entries.size() + "/" + capacity + ", hits: " + hits + ", misses: " + misses;
+    }
+
+    /**
+     * An interface for the parsers of sources missing in the cache
+     *
+     * @param <V> the class of parsing results
+     */
+    public interface Parser<V> {
+
+        /**
+         * Parsing the source
+         *
+         * @param source
+         * @return
+         * @throws tclinterpreter.AbstractTclParser.TclParserError
+         */
+        public V parse(String source) throws AbstractTclParser.TclParserError;
+    }
+}
@@ -57,121 +57,152 @@ public class TclParser extends AbstractTclParser {
         TclNode node = new TclNode(TclNodeType.COMMAND);
         node.setValue("eof");
         TclNode operand = null;
-        try {
+        /*
+         Any should begin with a word with a possible leading whitespace
+         */
+        if (!acceptToken(TclTokenType.WORD, TclTokenType.WHITESPACE, TclTokenType.EOL, TclTokenType.CMT)
+                || (currenttoken.type != TclTokenType.WORD && !acceptToken(TclTokenType.WORD, TclTokenType.CMT))
+                || (currenttoken.type != TclTokenType.WORD && !acceptToken(TclTokenType.WORD))) {
+            return endCommand(node, TclTokenType.WORD);
+        }
+        node.setValue(currenttoken.getValue());
+        /*
+         There should be a whitespace after the command name
+         */
+        if (!acceptToken(TclTokenType.WHITESPACE)) {
+            return endCommand(node, TclTokenType.WHITESPACE);
+        }
+        /*
+         Getting operands
+         */
+        while (true) {
             /*
-             Any should begin with a word with a possible leading whitespace
+             Skipping whitespace tokens
              */
-            advanceToken(TclTokenType.WORD, TclTokenType.WHITESPACE, TclTokenType.EOL, TclTokenType.CMT);
-            if (currenttoken.type != TclTokenType.WORD) {
-                advanceToken(TclTokenType.WORD, TclTokenType.CMT);
+            if (acceptToken(TclTokenType.WHITESPACE)) {
+                continue;
             }
-            if (currenttoken.type != TclTokenType.WORD) {
-                advanceToken(TclTokenType.WORD);
-            }
-            node.setValue(currenttoken.getValue());
             /*
-             There should be a whitespace after the command name
-             */
-            advanceToken(TclTokenType.WHITESPACE);
-            /**
-             * Cycling over arguments
+             Creating a new operand node after whitespace
              */
-
+            if (previoustoken.type == TclTokenType.WHITESPACE) {
+                operand = new TclNode(TclNodeType.OPERAND).setValue(currenttoken.getValue());
+                node.getChildren().add(operand);
+            }
             /*
-             Getting operands
+             Analysing tokens corresponding to operands
              */
-            while (true) {
-                try {
+            switch (currenttoken.type) {
+                case WORD:
                     /*
-                     Skipping whitespace tokens
+                     A variable substitution
                      */
-                    advanceToken(TclTokenType.WHITESPACE);
-                } catch (TclParserError innererror) {
+                    operand.getChildren().add(new TclNode(TclNodeType.WORD).
+                            setValue(currenttoken.getValue()));
+                    break;
+                case DOLLAR:
                     /*
-                     Creating a new operand node after whitespace
+                     A name as an operand
                      */
-                    if (previoustoken.type == TclTokenType.WHITESPACE) {
-                        operand = new TclNode(TclNodeType.OPERAND).setValue(currenttoken.getValue());
-                        node.getChildren().add(operand);
+                    if (!acceptToken(TclTokenType.NAME)) {
+                        return endCommand(node, TclTokenType.NAME);
                     }
+                    operand.getChildren().add(new TclNode(TclNodeType.NAME).
+                            setValue(currenttoken.getValue()));
+                    break;
+                case LEFTCURL:
                     /*
-                     Analysing tokens corresponding to operands
+                     A string in curly brackets
                      */
-                    switch (currenttoken.type) {
-                        case WORD:
-                            /*
-                             A variable substitution
-                             */
-                            operand.getChildren().add(new TclNode(TclNodeType.WORD).
-                                    setValue(currenttoken.getValue()));
-                            break;
-                        case DOLLAR:
-                            /*
-                             A name as an operand
-                             */
-                            advanceToken(TclTokenType.NAME);
-                            operand.getChildren().add(new TclNode(TclNodeType.NAME).
-                                    setValue(currenttoken.getValue()));
-                            break;
-                        case LEFTCURL:
-                            /*
-                             A string in curly brackets
-                             */
-                            advanceToken(TclTokenType.STRING, TclTokenType.RIGHTCURL);
-                            if (currenttoken.type == TclTokenType.STRING) {
-                                operand.getChildren().add(new TclNode(TclNodeType.STRING).
-                                        setValue(currenttoken.getValue()));
-                                advanceToken(TclTokenType.RIGHTCURL);
-                            } else {
-                                operand.getChildren().add(new TclNode(TclNodeType.STRING).
-                                        setValue(""));
-                            }
-                            break;
-                        case LEFTBR:
-                            /*
-                             Commands in brackets
-                             */
-                            advanceToken(TclTokenType.STRING, TclTokenType.RIGHTBR);
-                            if (currenttoken.type == TclTokenType.STRING) {
-                                operand.getChildren().add(new TclNode(TclNodeType.PROGRAM).
-                                        setValue(currenttoken.getValue()));
-                                advanceToken(TclTokenType.RIGHTBR);
-                            } else {
-                                operand.getChildren().add(new TclNode(TclNodeType.PROGRAM).
-                                        setValue(""));
-                            }
-                            break;
-                        case LEFTQ:
-                            /*
-                             A string in quotes
-                             */
-                            advanceToken(TclTokenType.STRING, TclTokenType.RIGHTQ);
-                            if (currenttoken.type == TclTokenType.STRING) {
-                                operand.getChildren().addAll(parseString(currenttoken.getValue()));
-                                advanceToken(TclTokenType.RIGHTQ);
-                            } else {
-                                operand.getChildren().add(new TclNode(TclNodeType.SUBSTRING).
-                                        setValue(""));
-                            }
-                            break;
-                        case CMT:
-                            System.out.println(currenttoken);
-                            break;
-                        default:
-                            throw innererror;
+                    if (!acceptToken(TclTokenType.STRING, TclTokenType.RIGHTCURL)) {
+                        return endCommand(node, TclTokenType.STRING);
                     }
-                }
-            }
-        } catch (TclParserError outererror) {
-            // Throw an error if not end of line, semi-colon or end of file
-            if (currenttoken.type != TclTokenType.EOL
-                    && currenttoken.type != TclTokenType.SEMI && currenttoken.type != TclTokenType.EOF) {
-                throw outererror;
+                    if (currenttoken.type == TclTokenType.STRING) {
+                        operand.getChildren().add(new TclNode(TclNodeType.STRING).
+                                setValue(currenttoken.getValue()));
+                        if (!acceptToken(TclTokenType.RIGHTCURL)) {
+                            return endCommand(node, TclTokenType.RIGHTCURL);
+                        }
+                    } else {
+                        operand.getChildren().add(new TclNode(TclNodeType.STRING).
+                                setValue(""));
+                    }
+                    break;
+                case LEFTBR:
+                    /*
+                     Commands in brackets
+                     */
+                    if (!acceptToken(TclTokenType.STRING, TclTokenType.RIGHTBR)) {
+                        return endCommand(node, TclTokenType.STRING);
+                    }
+                    if (currenttoken.type == TclTokenType.STRING) {
+                        operand.getChildren().add(new TclNode(TclNodeType.PROGRAM).
+                                setValue(currenttoken.getValue()));
+                        if (!acceptToken(TclTokenType.RIGHTBR)) {
+                            return endCommand(node, TclTokenType.RIGHTBR);
+                        }
+                    } else {
+                        operand.getChildren().add(new TclNode(TclNodeType.PROGRAM).
+                                setValue(""));
+                    }
+                    break;
+                case LEFTQ:
+                    /*
+                     A string in quotes
+                     */
+                    if (!acceptToken(TclTokenType.STRING, TclTokenType.RIGHTQ)) {
+                        return endCommand(node, TclTokenType.STRING);
+                    }
+                    if (currenttoken.type == TclTokenType.STRING) {
+                        operand.getChildren().addAll(parseString(currenttoken.getValue()));
+                        if (!acceptToken(TclTokenType.RIGHTQ)) {
+                            return endCommand(node, TclTokenType.RIGHTQ);
+                        }
+                    } else {
+                        operand.getChildren().add(new TclNode(TclNodeType.SUBSTRING).
+                                setValue(""));
+                    }
+                    break;
+                case CMT:
+                    System.out.println(currenttoken);
+                    break;
+                default:
+                    return endCommand(node, TclTokenType.WHITESPACE);
             }
         }
+    }
+
+    /**
+     * Finishing the command at a token, which is not expected. The command is
+     * returned if the token is the end of line, semi-colon or end of file,
+     * otherwise an error is thrown.
+     *
+     * @param node the command node
+     * @param type the expected token type
+     * @return
+     * @throws TclParserError
+     */
+    protected TclNode endCommand(TclNode node, TclTokenType type) throws TclParserError {
+        if (currenttoken.type != TclTokenType.EOL
+                && currenttoken.type != TclTokenType.SEMI && currenttoken.type != TclTokenType.EOF) {
+            throw unexpectedToken(type);
+        }
         return node;
     }
 
+    /**
+     * Reading the next command for incremental execution
+     *
+     * @return the command node or null if the end of file has been reached
+     * @throws TclParserError
+     */
+    public TclNode nextCommand() throws TclParserError {
+        if (currenttoken != null && currenttoken.type == TclTokenType.EOF) {
+            return null;
+        }
+        return getCommand();
+    }
+
     @Override
     public TclNode parse() throws TclParserError {
         TclNode node = new TclNode(TclNodeType.PROGRAM).setValue("test script");
@@ -39,17 +39,15 @@ public class TclStringLexer extends AbstractTclLexer {
      *
      * @return
      */
-    protected String readName() {
-        StringBuilder name = new StringBuilder("");
+    protected TclToken readName() {
+        beginToken();
         int counter = 0; //Parentheses counter
-        while ((Character.isDigit(getCurrentchar())
-                || Character.isLetter(getCurrentchar())
-                || getCurrentchar() == '_'
+        while ((isNameChar(getCurrentchar())
                 || getCurrentchar() == '('
                 || (getCurrentchar() == ')' && counter != 0)
                 || getCurrentchar() == '\\') && getCurrentchar() != 0) {
             if (getCurrentchar() == '\\') {
-                name.append(replaceSymbol());
+                consumeSymbol();
             } else {
                 //Incrementing or decrementing parentheses counter
                 if (getCurrentchar() == '(') {
@@ -57,11 +55,10 @@ public class TclStringLexer extends AbstractTclLexer {
                 } else if (getCurrentchar() == ')') {
                     counter--;
                 }
-                name.append(getCurrentchar());
-                advancePosition();
+                consumeChar();
             }
         }
-        return name.toString();
+        return endToken(TclTokenType.NAME);
     }
 
     /**
@@ -69,17 +66,16 @@ public class TclStringLexer extends AbstractTclLexer {
      *
      * @return
      */
-    protected String readSubString() {
-        StringBuilder string = new StringBuilder();
+    protected TclToken readSubString() {
+        beginToken();
         while (getCurrentchar() != '[' && getCurrentchar() != 0 && getCurrentchar() != '$' && getCurrentchar() != 0) {
             if (getCurrentchar() == '\\') {
-                string.append(replaceSymbol());
+                consumeSymbol();
             } else {
-                string.append(getCurrentchar());
-                advancePosition();
+                consumeChar();
             }
         }
-        return string.toString();
+        return endToken(TclTokenType.STRING);
     }
 
     /**
@@ -87,13 +83,12 @@ public class TclStringLexer extends AbstractTclLexer {
      *
      * @return
      */
-    protected String readCommandString() {
-        StringBuilder string = new StringBuilder("");
+    protected TclToken readCommandString() {
+        beginToken();
         //Counter of nested brackets
         int counter = 1;
         do {
-            string.append(getCurrentchar());
-            advancePosition();
+            consumeChar();
             //Icreamenting or decreamenting the nested bracket counter
             if (getCurrentchar() == '[') {
                 counter++;
@@ -101,7 +96,7 @@ public class TclStringLexer extends AbstractTclLexer {
                 counter--;
             }
         } while (counter > 0 && getCurrentchar() != 0);
-        return string.toString();
+        return endToken(TclTokenType.STRING);
     }
 
     @Override
@@ -127,22 +122,22 @@ public class TclStringLexer extends AbstractTclLexer {
              */
             advancePosition();
             return new TclToken(TclTokenType.DOLLAR);
-        } else if ((getCurrentchar() == '_' || Character.isLetter(getCurrentchar()))
+        } else if (isNameStart(getCurrentchar())
                 && peekback() == '$') {
             /*
              Returning a name token
              */
-            return new TclToken(TclTokenType.NAME).setValue(readName());
+            return readName();
         } else if (peekback() == '[') {
             /*
              Reading and returning a string representing a script
              */
-            return new TclToken(TclTokenType.STRING).setValue(readCommandString());
+            return readCommandString();
         } else {
             /*
              Reading and returning a substring
              */
-            return new TclToken(TclTokenType.STRING).setValue(readSubString());
+            return readSubString();
         }
     }
 }
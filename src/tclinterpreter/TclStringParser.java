@@ -35,47 +35,42 @@ public class TclStringParser extends AbstractTclParser {
     @Override
     public TclNode parse() throws TclParserError {
         TclNode node = new TclNode(TclNodeType.STRING).setValue(lexer.getScript());
-        do {
-            try {
-                advanceToken(TclTokenType.EOF);
-            } catch (TclParserError error) {
-                switch (currenttoken.type) {
-                    case LEFTBR:
-                        /*
-                         Commands in brackets
-                         */
-                        advanceToken(TclTokenType.STRING, TclTokenType.RIGHTBR);
-                        if (currenttoken.type == TclTokenType.STRING) {
-                            node.getChildren().add(new TclNode(TclNodeType.PROGRAM).
-                                    setValue(currenttoken.getValue()));
-                            advanceToken(TclTokenType.RIGHTBR);
-                        } else {
-                            node.getChildren().add(new TclNode(TclNodeType.PROGRAM).
-                                    setValue(""));
-                        }
-                        break;
-                    case DOLLAR:
-                        /*
-                         A name substitution
-                         */
-                        advanceToken(TclTokenType.NAME);
-                        node.getChildren().add(new TclNode(TclNodeType.NAME).
+        while (!acceptToken(TclTokenType.EOF)) {
+            switch (currenttoken.type) {
+                case LEFTBR:
+                    /*
+                     Commands in brackets
+                     */
+                    advanceToken(TclTokenType.STRING, TclTokenType.RIGHTBR);
+                    if (currenttoken.type == TclTokenType.STRING) {
+                        node.getChildren().add(new TclNode(TclNodeType.PROGRAM).
                                 setValue(currenttoken.getValue()));
-                        break;
-                    case STRING:
-                        /*
-                         A string without substitutions
-                         */
-                        node.getChildren().add(new TclNode(TclNodeType.SUBSTRING).
-                                setValue(currenttoken.getValue()));
-                        break;
-                    default:
-                        throw new TclParserError("Unknown token within a string",
-                                currenttoken.type, TclTokenType.STRING);
-                }
+                        advanceToken(TclTokenType.RIGHTBR);
+                    } else {
+                        node.getChildren().add(new TclNode(TclNodeType.PROGRAM).
+                                setValue(""));
+                    }
+                    break;
+                case DOLLAR:
+                    /*
+                     A name substitution
+                     */
+                    advanceToken(TclTokenType.NAME);
+                    node.getChildren().add(new TclNode(TclNodeType.NAME).
+                            setValue(currenttoken.getValue()));
+                    break;
+                case STRING:
+                    /*
+                     A string without substitutions
+                     */
+                    node.getChildren().add(new TclNode(TclNodeType.SUBSTRING).
+                            setValue(currenttoken.getValue()));
+                    break;
+                default:
+                    throw new TclParserError("Unknown token within a string",
+                            currenttoken.type, TclTokenType.STRING);
             }
-
-        } while (currenttoken.type != TclTokenType.EOF);
+        }
         return node;
     }
 }
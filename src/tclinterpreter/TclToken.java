@@ -31,10 +31,20 @@ public class TclToken {
     public final TclTokenType type;
 
     /**
-     * The string value of the token
+     * The string value of the token, which is created on demand for slices
      */
     protected String value;
 
+    /**
+     * The source the token is a slice of or null
+     */
+    protected CharSequence source = null;
+
+    /**
+     * The offset and the length of the slice
+     */
+    protected int offset, length;
+
     /**
      * Constructor
      *
@@ -45,6 +55,22 @@ public class TclToken {
         this.value = type.name();
     }
 
+    /**
+     * Constructor of a token, which is a slice of the source
+     *
+     * @param type
+     * @param source
+     * @param offset
+     * @param length
+     */
+    public TclToken(TclTokenType type, CharSequence source, int offset, int length) {
+        this.type = type;
+        this.value = null;
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+    }
+
     /**
      * Setting the string value of the token
      *
@@ -53,6 +79,7 @@ public class TclToken {
      */
     public TclToken setValue(String value) {
         this.value = value;
+        this.source = null;
         return this;
     }
 
@@ -62,11 +89,15 @@ public class TclToken {
      * @return
      */
     public String getValue() {
+        if (value == null) {
+            value = source.subSequence(offset, offset + length).toString();
+            source = null;
+        }
         return value;
     }
 
     @Override
     public String toString() {
-        return "" + type + ", TokenValue: " + value;
+        return "" + type + ", TokenValue: " + getValue();
     }
 }
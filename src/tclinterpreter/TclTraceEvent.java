@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2016 Ruslan Feshchenko
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tclinterpreter;
+
+/**
+ * A class for interpreter trace events
+ *
+ * @author Ruslan Feshchenko
+ * @version 0.1
+ */
+public class TclTraceEvent {
+
+    /**
+     * The kind of the event
+     */
+    public final Kind kind;
+
+    /**
+     * The name of the script, variable or command or null
+     */
+    public final String name;
+
+    /**
+     * The index of an array element or null
+     */
+    public final String index;
+
+    /**
+     * The value or null
+     */
+    public final String value;
+
+    /**
+     * The time of the event in milliseconds since the epoch
+     */
+    public final long time;
+
+    /**
+     * Constructor
+     *
+     * @param kind
+     * @param name
+     * @param index
+     * @param value
+     */
+    public TclTraceEvent(Kind kind, String name, String index, String value) {
+        this(kind, name, index, value, System.currentTimeMillis());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param kind
+     * @param name
+     * @param index
+     * @param value
+     * @param time the time of the event in milliseconds since the epoch
+     */
+    public TclTraceEvent(Kind kind, String name, String index, String value, long time) {
+        this.kind = kind;
+        this.name = name;
+        this.index = index;
+        this.value = value;
+        this.time = time;
+    }
+
+    /**
+     * Returning the name with the index of an array element
+     *
+     * @return
+     */
+    public String getFullName() {
+        return index == null ? name : name + "(" + index + ")";
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case RUN:
+                return "Executing " + name + ":\n";
+            case ENTER:
+                return "[";
+            case LEAVE:
+                return "]\n";
+            case SET:
+                return " " + getFullName() + "=" + value + ";\n";
+            case UNSET:
+                return " " + getFullName() + "=undefined;\n";
+            case OUTPUT:
+                return " output: " + value + ";\n";
+            case EXPRESSION:
+                return " expression=" + value + ";\n";
+            case COMMAND:
+                return " " + name + " " + value + "\n";
+            default:
+                return " " + name + "=" + value + ";\n";
+        }
+    }
+
+    /**
+     * An enumeration for the kinds of trace events
+     */
+    public static enum Kind {
+
+        /**
+         * Running a script
+         */
+        RUN,
+        /**
+         * Entering a substituted script or a body
+         */
+        ENTER,
+        /**
+         * Leaving a substituted script or a body
+         */
+        LEAVE,
+        /**
+         * Setting or reading a variable
+         */
+        SET,
+        /**
+         * Deleting a variable
+         */
+        UNSET,
+        /**
+         * Writing to the output stream
+         */
+        OUTPUT,
+        /**
+         * Evaluating an expression
+         */
+        EXPRESSION,
+        /**
+         * Invoking a command with the digest of its arguments
+         */
+        COMMAND,
+        /**
+         * The result of a command
+         */
+        RESULT
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2016 Ruslan Feshchenko
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tclinterpreter;
+
+/**
+ * An interface for the listeners of interpreter traces. Events are only
+ * created if a listener is set for the interpreter.
+ *
+ * @author Ruslan Feshchenko
+ * @version 0.1
+ */
+public interface TclTraceListener {
+
+    /**
+     * Receiving a trace event
+     *
+     * @param event
+     */
+    public void trace(TclTraceEvent event);
+}
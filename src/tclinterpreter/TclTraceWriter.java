@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2016 Ruslan Feshchenko
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tclinterpreter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * A trace listener writing the text form of events to a writer, for example
+ * a buffered file writer
+ *
+ * @author Ruslan Feshchenko
+ * @version 0.1
+ */
+public class TclTraceWriter implements TclTraceListener {
+
+    /**
+     * The writer
+     */
+    private final Writer writer;
+
+    /**
+     * Constructor
+     *
+     * @param writer
+     */
+    public TclTraceWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Constructor collecting the trace in memory
+     */
+    public TclTraceWriter() {
+        this(new StringWriter());
+    }
+
+    @Override
+    public void trace(TclTraceEvent event) {
+        try {
+            writer.write(event.toString());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Returning the writer
+     *
+     * @return
+     */
+    public Writer getWriter() {
+        return writer;
+    }
+
+    /**
+     * Returning the trace if it is collected in memory
+     *
+     * @return
+     */
+    @Override
+    public String toString() {
+        return writer instanceof StringWriter ? writer.toString() : "";
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2016 Ruslan Feshchenko
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tclinterpreter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+import tclinterpreter.TclExpressionInterpreter.OpResult;
+
+/**
+ * A class for Tcl values, which keep their string form together with
+ * internal forms computed on the first use. Values are immutable, so they
+ * can be shared between variables without copying the internal forms.
+ *
+ * @author Ruslan Feshchenko
+ * @version 0.1
+ */
+public final class TclValue {
+
+    /**
+     * The string form or null if it has not been computed
+     */
+    private String string;
+
+    /**
+     * The computation of the string form of a lazy value or null
+     */
+    private Supplier<String> supplier = null;
+
+    /**
+     * The numeric form or null if it has not been computed
+     */
+    private OpResult number = null;
+
+    /**
+     * The list form or null if it has not been computed
+     */
+    private List<String> list = null;
+
+    /**
+     * The list form of values, which are not well-formed lists
+     */
+    private static final List<String> NOLIST = Collections.emptyList();
+
+    /**
+     * Constructor
+     *
+     * @param string the string form
+     */
+    private TclValue(String string) {
+        this.string = string;
+    }
+
+    /**
+     * Creating a value from its string form
+     *
+     * @param string
+     * @return the value or null if the string is null
+     */
+    public static TclValue of(String string) {
+        return string == null ? null : new TclValue(string);
+    }
+
+    /**
+     * Creating a value, whose string form is computed on the first use
+     *
+     * @param supplier the computation of the string form
+     * @return
+     */
+    public static TclValue lazy(Supplier<String> supplier) {
+        TclValue value = new TclValue(null);
+        value.supplier = supplier;
+        return value;
+    }
+
+    /**
+     * Returning the numeric form of the value as read by expressions
+     *
+     * @return
+     */
+    protected OpResult getNumber() {
+        if (number == null) {
+            number = TclExpressionInterpreter.readNumber(toString());
+        }
+        return number;
+    }
+
+    /**
+     * Returning the list form of the value, which is the read-only list of
+     * its elements read by the Tcl list rules
+     *
+     * @return the list or null if the value is not a well-formed list
+     */
+    public List<String> getList() {
+        if (list == null) {
+            List<String> elements = readList(toString());
+            list = elements == null ? NOLIST : Collections.unmodifiableList(elements);
+        }
+        return list == NOLIST ? null : list;
+    }
+
+    /**
+     * Reading the elements of a list. Elements are separated by whitespace
+     * and may be enclosed in braces, which are kept verbatim, or in quotes,
+     * which have backslash substitutions like unquoted elements.
+     *
+     * @param str
+     * @return the elements or null if the string is not a well-formed list
+     */
+    private static List<String> readList(String str) {
+        List<String> elements = new ArrayList<>();
+        int length = str.length();
+        int pos = 0;
+        while (true) {
+            //Skipping whitespace between elements
+            while (pos < length && Character.isWhitespace(str.charAt(pos))) {
+                pos++;
+            }
+            if (pos == length) {
+                return elements;
+            }
+            StringBuilder element = new StringBuilder();
+            char c = str.charAt(pos);
+            if (c == '{') {
+                //Braced element with nested braces
+                int level = 1;
+                int start = ++pos;
+                while (pos < length && level > 0) {
+                    c = str.charAt(pos++);
+                    if (c == '\\') {
+                        pos++;
+                    } else if (c == '{') {
+                        level++;
+                    } else if (c == '}') {
+                        level--;
+                    }
+                }
+                if (level > 0 || pos > length) {
+                    return null;
+                }
+                element.append(str, start, pos - 1);
+            } else if (c == '"') {
+                //Quoted element
+                pos++;
+                while (pos < length && str.charAt(pos) != '"') {
+                    pos = readChar(str, pos, element);
+                }
+                if (pos == length) {
+                    return null;
+                }
+                pos++;
+            } else {
+                while (pos < length && !Character.isWhitespace(str.charAt(pos))) {
+                    pos = readChar(str, pos, element);
+                }
+            }
+            //A closing brace or quote must be followed by whitespace
+            if (pos < length && !Character.isWhitespace(str.charAt(pos))) {
+                return null;
+            }
+            elements.add(element.toString());
+        }
+    }
+
+    /**
+     * Reading a character of a list element with the backslash substitution
+     *
+     * @param str
+     * @param pos the position of the character
+     * @param element the element being read
+     * @return the position after the character
+     */
+    private static int readChar(String str, int pos, StringBuilder element) {
+        char c = str.charAt(pos++);
+        if (c != '\\' || pos == str.length()) {
+            element.append(c);
+            return pos;
+        }
+        c = str.charAt(pos++);
+        switch (c) {
+            case 'a':
+                element.append((char) 7);
+                break;
+            case 'b':
+                element.append((char) 8);
+                break;
+            case 'f':
+                element.append((char) 12);
+                break;
+            case 'n':
+                element.append((char) 10);
+                break;
+            case 'r':
+                element.append((char) 13);
+                break;
+            case 't':
+                element.append((char) 9);
+                break;
+            case 'v':
+                element.append((char) 11);
+                break;
+            case 'x':
+                return readCode(str, pos, 16, 2, element);
+            case 'u':
+                return readCode(str, pos, 16, 4, element);
+            case '\n':
+                //Backslash-newline and the following whitespace is a space
+                while (pos < str.length() && (str.charAt(pos) == ' ' || str.charAt(pos) == '\t')) {
+                    pos++;
+                }
+                element.append(' ');
+                break;
+            default:
+                if (c >= '0' && c <= '7') {
+                    return readCode(str, pos - 1, 8, 3, element);
+                }
+                element.append(c);
+        }
+        return pos;
+    }
+
+    /**
+     * Reading a character given by its code in a backslash substitution
+     *
+     * @param str
+     * @param pos the position of the first digit
+     * @param radix
+     * @param digits the maximum number of digits
+     * @param element the element being read
+     * @return the position after the code
+     */
+    private static int readCode(String str, int pos, int radix, int digits, StringBuilder element) {
+        int code = 0;
+        int end = Math.min(str.length(), pos + digits);
+        int start = pos;
+        while (pos < end && Character.digit(str.charAt(pos), radix) >= 0) {
+            code = code * radix + Character.digit(str.charAt(pos++), radix);
+        }
+        if (pos == start) {
+            //No digits, so the letter stands for itself
+            element.append(str.charAt(pos - 1));
+        } else {
+            element.append((char) code);
+        }
+        return pos;
+    }
+
+    @Override
+    public String toString() {
+        if (string == null) {
+            string = supplier.get();
+        }
+        return string;
+    }
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 2016 Ruslan Feshchenko
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tclinterpreter;
+
+import tclinterpreter.AbstractTclInterpreter.TclCompletion;
+import tclinterpreter.AbstractTclInterpreter.TclExecutionException;
+import tclinterpreter.TclExpressionInterpreter.OpResult;
+
+/**
+ * A virtual machine executing compiled Tcl code in the context of a Tcl
+ * interpreter
+ *
+ * @author Ruslan Feshchenko
+ * @version 0.1
+ */
+public class TclVirtualMachine {
+
+    /**
+     * Instructions by their codes
+     */
+    private static final TclOpCode[] OPCODES = TclOpCode.values();
+
+    /**
+     * The system property enabling the translation of hot code by
+     * TclJitCompiler
+     */
+    public static final String JIT_PROPERTY = "tclinterpreter.jit";
+
+    /**
+     * The system property setting the number of executions and loop
+     * iterations after which code is translated
+     */
+    public static final String JIT_THRESHOLD_PROPERTY = "tclinterpreter.jit.threshold";
+
+    /**
+     * The default number of executions after which code is translated
+     */
+    public static final int DEFAULT_JIT_THRESHOLD = 1000;
+
+    /**
+     * The Tcl interpreter, whose context and commands are used
+     */
+    protected final TclInterpreter interpreter;
+
+    /**
+     * Is the translation of hot code enabled?
+     */
+    protected boolean jitEnabled = Boolean.getBoolean(JIT_PROPERTY);
+
+    /**
+     * The number of executions after which code is translated
+     */
+    protected int jitThreshold = Integer.getInteger(JIT_THRESHOLD_PROPERTY, DEFAULT_JIT_THRESHOLD);
+
+    /**
+     * Constructor
+     *
+     * @param interpreter
+     */
+    public TclVirtualMachine(TclInterpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    /**
+     * Is the translation of hot code enabled?
+     *
+     * @return
+     */
+    public boolean isJitEnabled() {
+        return jitEnabled;
+    }
+
+    /**
+     * Enabling or disabling the translation of hot code
+     *
+     * @param jitEnabled
+     */
+    public void setJitEnabled(boolean jitEnabled) {
+        this.jitEnabled = jitEnabled;
+    }
+
+    /**
+     * Returning the number of executions after which code is translated
+     *
+     * @return
+     */
+    public int getJitThreshold() {
+        return jitThreshold;
+    }
+
+    /**
+     * Setting the number of executions after which code is translated
+     *
+     * @param jitThreshold
+     */
+    public void setJitThreshold(int jitThreshold) {
+        if (jitThreshold < 1) {
+            throw new IllegalArgumentException("The threshold must be positive!");
+        }
+        this.jitThreshold = jitThreshold;
+    }
+
+    /**
+     * Executing a compiled script
+     *
+     * @param code
+     * @return the result of the last command with a non-empty result
+     * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
+     */
+    public TclList execute(TclByteCode code) throws TclExecutionException {
+        return (TclList) run(code);
+    }
+
+    /**
+     * Evaluating a compiled expression
+     *
+     * @param code
+     * @return the expression value
+     * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
+     */
+    public String evaluate(TclByteCode code) throws TclExecutionException {
+        return run(code).toString();
+    }
+
+    /**
+     * Running compiled code, counting its executions and translating it once
+     * it becomes hot
+     *
+     * @param bytecode
+     * @return the value of an expression or the result of a script
+     * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
+     */
+    protected Object run(TclByteCode bytecode) throws TclExecutionException {
+        if (jitEnabled) {
+            TclJitCompiler.CompiledCode compiled = promote(bytecode);
+            if (compiled != null) {
+                return compiled.run(this);
+            }
+        }
+        return interpret(bytecode, 0, null);
+    }
+
+    /**
+     * Counting an execution or a loop iteration of compiled code and
+     * translating the code once it becomes hot
+     *
+     * @param bytecode
+     * @return the translated code or null
+     */
+    protected TclJitCompiler.CompiledCode promote(TclByteCode bytecode) {
+        TclJitCompiler.CompiledCode compiled = bytecode.compiled;
+        if (compiled == null && !bytecode.rejected && ++bytecode.invocations >= jitThreshold) {
+            compiled = TclJitCompiler.compile(bytecode);
+            bytecode.compiled = compiled;
+            bytecode.rejected = compiled == null
+                    || bytecode.deoptimizations >= TclJitCompiler.MAX_DEOPTIMIZATIONS;
+        }
+        return compiled;
+    }
+
+    /**
+     * The interpreter loop. Backward jumps of inline loops are counted, and a
+     * loop, which becomes hot, is continued in the translated code.
+     *
+     * @param bytecode
+     * @param start the position to start from with an empty operand stack
+     * @param result the current script result
+     * @return the value of an expression or the result of a script
+     * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
+     */
+    protected Object interpret(TclByteCode bytecode, int start, TclList result) throws TclExecutionException {
+        final int[] code = bytecode.code;
+        final Object[] constants = bytecode.constants;
+        final Object[] stack = new Object[bytecode.maxStack];
+        final TclInterpreter interp = interpreter;
+        TclList res;
+        TclCompiler.Variable var;
+        TclNode node;
+        Object value;
+        OpResult n2;
+        TclJitCompiler.CompiledCode compiled = null;
+        int pc = start, sp = 0;
+        execution:
+        while (pc < code.length) {
+            try {
+                switch (OPCODES[code[pc]]) {
+                    case PUSH:
+                        stack[sp++] = constants[code[pc + 1]];
+                        pc += 2;
+                        break;
+                    case LOAD_VAR:
+                        var = (TclCompiler.Variable) constants[code[pc + 1]];
+                        stack[sp++] = interp.context.getValue(var.name);
+                        pc += 2;
+                        break;
+                    case LOAD_ARRAY:
+                        var = (TclCompiler.Variable) constants[code[pc + 1]];
+                        stack[sp++] = interp.context.getArrayValue(var.name, var.index);
+                        pc += 2;
+                        break;
+                    case CONCAT:
+                        StringBuilder str = new StringBuilder();
+                        for (int i = sp - code[pc + 1]; i < sp; i++) {
+                            str.append(stack[i]);
+                        }
+                        sp -= code[pc + 1];
+                        stack[sp++] = str.toString();
+                        pc += 2;
+                        break;
+                    case EVAL:
+                        stack[sp++] = TclInterpreter.listToString(interp.evaluateScript((String) constants[code[pc + 1]]));
+                        pc += 2;
+                        break;
+                    case INVOKE:
+                        res = interp.executeCommand((TclCommandSite) constants[code[pc + 1]]);
+                        result = (res == null || res.isEmpty()) ? result : res;
+                        pc += 2;
+                        break;
+                    case STORE_VAR:
+                        var = (TclCompiler.Variable) constants[code[pc + 1]];
+                        value = valueOf(stack[--sp]);
+                        interp.context.setValue(var.name, (TclValue) value);
+                        interp.trace(TclTraceEvent.Kind.SET, var.name, value.toString());
+                        result = singleton(value.toString());
+                        pc += 2;
+                        break;
+                    case STORE_ARRAY:
+                        var = (TclCompiler.Variable) constants[code[pc + 1]];
+                        value = valueOf(stack[--sp]);
+                        interp.context.setArrayValue(var.name, var.index, (TclValue) value);
+                        interp.trace(TclTraceEvent.Kind.SET, var.name, var.index, value.toString());
+                        result = singleton(value.toString());
+                        pc += 2;
+                        break;
+                    case EXPR_RESULT:
+                        value = stack[--sp].toString();
+                        interp.trace(TclTraceEvent.Kind.EXPRESSION, null, (String) value);
+                        result = singleton((String) value);
+                        pc++;
+                        break;
+                    case TO_NUMBER:
+                        if (stack[sp - 1] == null) {
+                            node = (TclNode) constants[code[pc + 1]];
+                            throw new TclExecutionException("The variable " + node.getValue() + " is not defined!", node);
+                        }
+                        value = stack[sp - 1];
+                        stack[sp - 1] = value instanceof TclValue ? ((TclValue) value).getNumber()
+                                : TclExpressionInterpreter.readNumber((String) value);
+                        pc += 2;
+                        break;
+                    case TO_STRING:
+                        stack[sp - 1] = new OpResult(textOf(stack[sp - 1]));
+                        pc++;
+                        break;
+                    case UNARY:
+                        stack[sp - 1] = TclExpressionInterpreter.applyUnaryOperation(
+                                (TclNode) constants[code[pc + 1]], (OpResult) stack[sp - 1]);
+                        pc += 2;
+                        break;
+                    case BINARY:
+                        n2 = (OpResult) stack[--sp];
+                        stack[sp - 1] = TclExpressionInterpreter.applyBinaryOperation(
+                                (TclNode) constants[code[pc + 1]], (OpResult) stack[sp - 1], n2);
+                        pc += 2;
+                        break;
+                    case LOGIC:
+                        node = (TclNode) constants[code[pc + 1]];
+                        n2 = TclExpressionInterpreter.shortCircuit(node, (OpResult) stack[sp - 1]);
+                        if (n2 == null) {
+                            n2 = (OpResult) interpret((TclByteCode) constants[code[pc + 2]], 0, null);
+                            n2 = TclExpressionInterpreter.applyBinaryOperation(node, (OpResult) stack[sp - 1], n2);
+                        }
+                        stack[sp - 1] = n2;
+                        pc += 3;
+                        break;
+                    case TERNARY:
+                        node = (TclNode) constants[code[pc + 1]];
+                        stack[sp - 1] = interpret((TclByteCode) constants[code[pc + (TclExpressionInterpreter.chooseBranch(
+                                node, (OpResult) stack[sp - 1]) ? 2 : 3)]], 0, null);
+                        pc += 4;
+                        break;
+                    case FUNC:
+                        stack[sp - 1] = TclExpressionInterpreter.applyFunction(
+                                (TclFunctionNode) constants[code[pc + 1]], (OpResult) stack[sp - 1]);
+                        pc += 2;
+                        break;
+                    case JUMP:
+                        if (jitEnabled && code[pc + 1] < pc) {
+                            compiled = promote(bytecode);
+                            if (compiled != null) {
+                                pc = code[pc + 1];
+                                break execution;
+                            }
+                        }
+                        pc = code[pc + 1];
+                        break;
+                    case JUMP_FALSE:
+                        if (isTrue((OpResult) stack[--sp], (TclNode) constants[code[pc + 2]])) {
+                            pc += 3;
+                        } else {
+                            pc = code[pc + 1];
+                        }
+                        break;
+                    case GUARD:
+                        //Falling back to the command invocation if the command is redefined
+                        if (!interp.COMMANDS.isEmpty() && interp.COMMANDS.containsKey((String) constants[code[pc + 1]])) {
+                            pc = code[pc + 2];
+                        } else {
+                            pc += 3;
+                        }
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown instruction " + code[pc]);
+                }
+            } catch (TclCompletion ex) {
+                //Continuing at the target of 'break' or 'continue' in an inline loop
+                int target = bytecode.findHandler(pc, ex.getCode());
+                if (target < 0) {
+                    throw ex;
+                }
+                pc = target;
+                sp = 0;
+            }
+        }
+        if (compiled != null) {
+            //Continuing at the head of the hot loop in the translated code
+            return compiled.run(this, pc, result);
+        }
+        return bytecode.expression ? stack[0] : result;
+    }
+
+    /**
+     * Interpreting an expression value as a boolean
+     *
+     * @param value
+     * @param node the command node
+     * @return
+     * @throws tclinterpreter.AbstractTclInterpreter.TclExecutionException
+     */
+    protected boolean isTrue(OpResult value, TclNode node) throws TclExecutionException {
+        if (value.isDouble()) {
+            return value.getDouble() != 0;
+        }
+        Long bool = interpreter.readBooleanString(value.toString());
+        if (bool == null) {
+            throw new TclExecutionException("Expected a boolean value, but got '" + value + "'!", node);
+        }
+        return bool == 1;
+    }
+
+    /**
+     * Returning a string value the same way as substitutions do
+     *
+     * @param value
+     * @return
+     */
+    private static String textOf(Object value) {
+        return value == null ? "null" : value.toString();
+    }
+
+    /**
+     * Returning a value object for a stack element, keeping the internal
+     * forms of loaded values
+     *
+     * @param value
+     * @return
+     */
+    private static TclValue valueOf(Object value) {
+        return value instanceof TclValue ? (TclValue) value : TclValue.of(textOf(value));
+    }
+
+    /**
+     * Creating a command result with one value
+     *
+     * @param value
+     * @return
+     */
+    protected static TclList singleton(String value) {
+        TclList list = new TclList();
+        list.add(value);
+        return list;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2016 Ruslan Feshchenko
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tclinterpreter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A benchmark comparing the lookup table classification of characters in
+ * the lexers with the Character methods and the boxed map of closing
+ * brackets they replaced. Both classify every character of a generated
+ * script the way TclLexer does, and the time of lexing the whole script is
+ * given for reference. The number of rounds may be given as the first
+ * argument.
+ *
+ * @author Ruslan Feshchenko
+ * @version 0.1
+ */
+public class TclLexerBenchmark {
+
+    /**
+     * The closing characters for opening quotes and brackets as the lexer
+     * kept them before
+     */
+    private static final Map<Character, Character> MIRRORMAP = new HashMap<>();
+
+    static {
+        MIRRORMAP.put('"', '"');
+        MIRRORMAP.put('[', ']');
+        MIRRORMAP.put('{', '}');
+    }
+
+    /**
+     * The default number of rounds
+     */
+    private static final int ROUNDS = 50;
+
+    /**
+     * Not instantiable
+     */
+    private TclLexerBenchmark() {
+    }
+
+    /**
+     * Running the benchmark
+     *
+     * @param args the number of rounds
+     */
+    public static void main(String[] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : ROUNDS;
+        String script = generateScript(20000);
+        char[] chars = script.toCharArray();
+        //Warming up all methods
+        for (int i = 0; i < 5; i++) {
+            classifyByTable(chars);
+            classifyByCharacter(chars);
+            lex(script);
+        }
+        long start = System.nanoTime();
+        long table = 0;
+        for (int i = 0; i < rounds; i++) {
+            table += classifyByTable(chars);
+        }
+        long tabletime = System.nanoTime() - start;
+        start = System.nanoTime();
+        long character = 0;
+        for (int i = 0; i < rounds; i++) {
+            character += classifyByCharacter(chars);
+        }
+        long charactertime = System.nanoTime() - start;
+        start = System.nanoTime();
+        long tokens = 0;
+        for (int i = 0; i < rounds; i++) {
+            tokens += lex(script);
+        }
+        long lextime = System.nanoTime() - start;
+        System.out.println("Characters: " + (long) rounds * chars.length);
+        System.out.println("Lookup table: " + tabletime / 1000000 + " ms, " + table + " name characters");
+        System.out.println("Character methods: " + charactertime / 1000000 + " ms, " + character + " name characters");
+        System.out.println("TclLexer: " + lextime / rounds / 1000 + " us per pass, " + tokens / rounds + " tokens");
+    }
+
+    /**
+     * Generating a script with words, variables, numbers, braces and
+     * commands in brackets
+     *
+     * @param lines the number of lines
+     * @return
+     */
+    private static String generateScript(int lines) {
+        StringBuilder str = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            str.append("set var_").append(i % 100).append(" [expr {$x").append(i % 7)
+                    .append(" * 12.5 + 0x1F}]\n")
+                    .append("puts \"value ").append(i).append(": $var_").append(i % 100).append("\"\n");
+        }
+        return str.toString();
+    }
+
+    /**
+     * Classifying the characters with the lookup table of the lexers
+     *
+     * @param chars
+     * @return the number of name characters
+     */
+    private static long classifyByTable(char[] chars) {
+        long count = 0;
+        char endchar = '{';
+        for (char c : chars) {
+            if (AbstractBasicTclLexer.isWhitespace(c)) {
+                continue;
+            }
+            if (AbstractBasicTclLexer.isNameChar(c)) {
+                count++;
+            }
+            if (c == AbstractBasicTclLexer.mirror(endchar)) {
+                count--;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Classifying the characters with the Character methods and the map of
+     * closing brackets the lexers used before
+     *
+     * @param chars
+     * @return the number of name characters
+     */
+    private static long classifyByCharacter(char[] chars) {
+        long count = 0;
+        char endchar = '{';
+        for (char c : chars) {
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            if (Character.isDigit(c) || Character.isLetter(c) || c == '_') {
+                count++;
+            }
+            if (c == MIRRORMAP.get(endchar)) {
+                count--;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Lexing the whole script
+     *
+     * @param script
+     * @return the number of tokens
+     */
+    private static long lex(String script) {
+        TclLexer lexer = new TclLexer(script);
+        long count = 0;
+        while (lexer.getToken().type != TclTokenType.EOF) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2016 Ruslan Feshchenko
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tclinterpreter;
+
+import tclinterpreter.TclExpressionInterpreter.OpResult;
+
+/**
+ * A benchmark comparing TclNumberScanner with the exception based parsing of
+ * numbers it replaced. Both read the same mixed inputs of integers, doubles
+ * and strings, which are not numbers. The old parsing does not read prefixed
+ * integers such as 0x1f, so it counts fewer numbers. The number of rounds may
+ * be given as the first argument.
+ *
+ * @author Ruslan Feshchenko
+ * @version 0.1
+ */
+public class TclNumberBenchmark {
+
+    /**
+     * The inputs read in each round
+     */
+    private static final String[] INPUTS = {"42", "-17", "0x1f", "3.14", "1e10",
+        "-2.5e-3", "abc", "true", "$x", "9223372036854775808"};
+
+    /**
+     * The default number of rounds
+     */
+    private static final int ROUNDS = 200000;
+
+    /**
+     * Not instantiable
+     */
+    private TclNumberBenchmark() {
+    }
+
+    /**
+     * Running the benchmark
+     *
+     * @param args the number of rounds
+     */
+    public static void main(String[] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : ROUNDS;
+        //Warming up both methods
+        scanAll(rounds / 10);
+        parseAll(rounds / 10);
+        long start = System.nanoTime();
+        int scanned = scanAll(rounds);
+        long scantime = System.nanoTime() - start;
+        start = System.nanoTime();
+        int parsed = parseAll(rounds);
+        long parsetime = System.nanoTime() - start;
+        System.out.println("Reads: " + (long) rounds * INPUTS.length);
+        System.out.println("TclNumberScanner: " + scantime / 1000000 + " ms, " + scanned + " numbers");
+        System.out.println("Exception based parsing: " + parsetime / 1000000 + " ms, " + parsed + " numbers");
+    }
+
+    /**
+     * Reading the inputs with TclNumberScanner
+     *
+     * @param rounds
+     * @return the number of inputs read as numbers
+     */
+    private static int scanAll(int rounds) {
+        int count = 0;
+        for (int i = 0; i < rounds; i++) {
+            for (String str : INPUTS) {
+                if (TclNumberScanner.scan(str) != null) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reading the inputs with the exception based parsing
+     *
+     * @param rounds
+     * @return the number of inputs read as numbers
+     */
+    private static int parseAll(int rounds) {
+        int count = 0;
+        for (int i = 0; i < rounds; i++) {
+            for (String str : INPUTS) {
+                if (parse(str) != null) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reading a number as TclExpressionInterpreter did before
+     * TclNumberScanner, trying a long type then a double type
+     *
+     * @param number
+     * @return the number or null if the string is not a number
+     */
+    private static OpResult parse(String number) {
+        try {
+            return new OpResult(Long.parseLong(number));
+        } catch (NumberFormatException ex) {
+        }
+        try {
+            return new OpResult(Double.parseDouble(number));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+}